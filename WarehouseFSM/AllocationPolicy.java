@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+// choosing which waitlist entries a received shipment fills, per product
+public enum AllocationPolicy {
+
+  // filling head of queue only when it can be satisfied in full; stops at first short head
+  STRICT_FIFO {
+    @Override
+    public List<WaitlistItem> select(Collection<WaitlistItem> queue, int stock) {
+      List<WaitlistItem> fills = new ArrayList<>();
+      for (Iterator<WaitlistItem> it = queue.iterator(); it.hasNext(); ) {
+        WaitlistItem head = it.next();
+        if (head.getQty() > stock) break;
+        fills.add(head);
+        stock -= head.getQty();
+      }
+      return fills;
+    }
+  },
+
+  // filling head of queue as far as stock allows, splitting the last one if short
+  FIFO_PARTIAL {
+    @Override
+    public List<WaitlistItem> select(Collection<WaitlistItem> queue, int stock) {
+      List<WaitlistItem> fills = new ArrayList<>();
+      for (Iterator<WaitlistItem> it = queue.iterator(); stock > 0 && it.hasNext(); ) {
+        WaitlistItem head = it.next();
+        fills.add(head);
+        stock -= Math.min(stock, head.getQty());
+      }
+      return fills;
+    }
+  },
+
+  // skipping ahead to the largest entry that fits in full, again and again (earliest wins ties)
+  BEST_FIT {
+    @Override
+    public List<WaitlistItem> select(Collection<WaitlistItem> queue, int stock) {
+      // one pass for the entries that fit at all, then largest first with queue order among
+      // equals; stock only shrinks, so a skipped entry never fits later
+      List<WaitlistItem> fits = new ArrayList<>();
+      for (WaitlistItem wi : queue) {
+        if (wi.getQty() <= stock) fits.add(wi);
+      }
+      if (fits.isEmpty()) return Collections.emptyList();
+      if (stock < fits.size()) {
+        // few possible sizes: bucketing by qty beats sorting the candidates
+        int[] next = new int[fits.size()];
+        int[] first = new int[stock + 1];
+        Arrays.fill(first, -1);
+        for (int i = fits.size() - 1; i >= 0; i--) {
+          int qty = fits.get(i).getQty();
+          next[i] = first[qty];
+          first[qty] = i;
+        }
+        List<WaitlistItem> fills = new ArrayList<>();
+        for (int qty = stock; qty > 0 && stock > 0; qty = Math.min(qty - 1, stock)) {
+          for (int i = first[qty]; i >= 0 && qty <= stock; i = next[i]) {
+            fills.add(fits.get(i));
+            stock -= qty;
+          }
+        }
+        return fills;
+      }
+      fits.sort(LARGEST_FIRST);
+      List<WaitlistItem> fills = new ArrayList<>();
+      for (WaitlistItem wi : fits) {
+        if (wi.getQty() > stock) continue;
+        fills.add(wi);
+        stock -= wi.getQty();
+        if (stock == 0) break;
+      }
+      return fills;
+    }
+  };
+
+  private static final Comparator<WaitlistItem> LARGEST_FIRST =
+      Comparator.comparingInt(WaitlistItem::getQty).reversed();
+
+  /**
+   * Picking, in one pass over a product's queue, the entries to fill from stock
+   * on hand, in fill order. Each entry is filled with min(stock left, its qty).
+   */
+  public abstract List<WaitlistItem> select(Collection<WaitlistItem> queue, int stock);
+}
@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Clients ordered by balance, largest first (ties by client number), kept current as
+ * balances change (see Client.changeBalance). "Balance above X", "top N" and
+ * paging cost O(log n + results) instead of a scan over every client.
+ *
+ * Lookups never lock; a client whose balance moves during a read may show up
+ * at both its old and new position, never at neither.
+ */
+public final class BalanceIndex {
+  private final ConcurrentSkipListMap<Cursor, Client> byBalance = new ConcurrentSkipListMap<>();
+
+  /** Position in the index; a page continues after the cursor it was given */
+  public static final class Cursor implements Comparable<Cursor> {
+    private final long balanceCents;
+    private final int clientNumber; // 0 sorts before every client at the same balance
+
+    Cursor(long balanceCents, int clientNumber) {
+      this.balanceCents = balanceCents;
+      this.clientNumber = clientNumber;
+    }
+
+    @Override
+    public int compareTo(Cursor o) {
+      int byBalance = Long.compare(o.balanceCents, balanceCents);
+      return (byBalance != 0) ? byBalance : Integer.compare(clientNumber, o.clientNumber);
+    }
+
+    @Override public boolean equals(Object o) {
+      return (o instanceof Cursor) && compareTo((Cursor) o) == 0;
+    }
+
+    @Override public int hashCode() { return Long.hashCode(balanceCents) * 31 + clientNumber; }
+
+    /** The cursor as a page token ("balance:client number") */
+    public String toToken() { return balanceCents + ":" + clientNumber; }
+
+    /** Reading a token made by toToken; null stays null (the first page) */
+    public static Cursor fromToken(String token) {
+      if (token == null) return null;
+      int colon = token.indexOf(':');
+      try {
+        if (colon > 0) {
+          return new Cursor(Long.parseLong(token.substring(0, colon)), Integer.parseInt(token.substring(colon + 1)));
+        }
+      } catch (NumberFormatException e) {
+        // reported below
+      }
+      throw new IllegalArgumentException("Bad page token: " + token);
+    }
+  }
+
+  /** One page of clients and where the next one starts (null after the last page) */
+  public static final class Page {
+    private final List<Client> clients;
+    private final Cursor next;
+
+    Page(List<Client> clients, Cursor next) {
+      this.clients = clients;
+      this.next = next;
+    }
+
+    public List<Client> getClients() { return clients; }
+    public Cursor getNext() { return next; }
+  }
+
+  // adding a client at its current balance
+  void add(Client c) {
+    byBalance.put(new Cursor(c.getBalanceCents(), c.getNumber()), c);
+  }
+
+  // moving a client after its balance changed; caller serializes changes per client
+  void moved(Client c, long oldBalance, long newBalance) {
+    if (oldBalance == newBalance) return;
+    byBalance.put(new Cursor(newBalance, c.getNumber()), c);
+    byBalance.remove(new Cursor(oldBalance, c.getNumber()));
+  }
+
+  /** The n clients owing the most, largest balance first */
+  public List<Client> top(int n) {
+    if (n < 0) throw new IllegalArgumentException("n must be >= 0");
+    List<Client> out = new ArrayList<>(Math.min(n, 64));
+    for (Client c : above(0).values()) {
+      if (out.size() == n) break;
+      out.add(c);
+    }
+    return out;
+  }
+
+  /** All clients with balance greater than minCents, largest first */
+  public List<Client> withBalanceAbove(long minCents) {
+    return Collections.unmodifiableList(new ArrayList<>(above(minCents).values()));
+  }
+
+  /** Up to size clients with balance greater than minCents, continuing after cursor (null = from the top) */
+  public Page page(long minCents, Cursor after, int size) {
+    if (size <= 0) throw new IllegalArgumentException("size must be > 0");
+    ConcurrentNavigableMap<Cursor, Client> range = above(minCents);
+    if (after != null) range = range.tailMap(after, false);
+    List<Client> clients = new ArrayList<>(size);
+    Cursor last = null;
+    for (Map.Entry<Cursor, Client> e : range.entrySet()) {
+      if (clients.size() == size) return new Page(clients, last);
+      clients.add(e.getValue());
+      last = e.getKey();
+    }
+    return new Page(clients, null);
+  }
+
+  // counting clients in the index
+  public int size() { return byBalance.size(); }
+
+  // balances strictly greater than minCents come before (minCents, 0) in index order
+  private ConcurrentNavigableMap<Cursor, Client> above(long minCents) {
+    return byBalance.headMap(new Cursor(minCents, 0), false);
+  }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic checkpoints for a journaled warehouse. Each checkpoint writes only
+ * the products, clients and waitlist queues changed since the previous one as a
+ * delta segment beside the snapshot (see Warehouse.checkpoint), so its cost
+ * follows the churn rather than the data size. Every few checkpoints the
+ * snapshot and its deltas are merged into a fresh snapshot on a background
+ * thread, from the files alone, without locking the live warehouse.
+ */
+public class Checkpointer implements AutoCloseable {
+  private final Warehouse warehouse;
+  private final Path snapshot;
+  // serializes the writers of the snapshot file itself (full saves and compaction)
+  private final Object snapshotLock = new Object();
+  private ScheduledExecutorService scheduler;
+  private ExecutorService compactor;
+  private int sinceCompaction;
+  // why the last background checkpoint or compaction failed; null once one succeeds again
+  private volatile IOException failure;
+
+  public Checkpointer(Warehouse warehouse, Path snapshot) {
+    if (warehouse == null || snapshot == null) throw new IllegalArgumentException("warehouse and snapshot must not be null");
+    this.warehouse = warehouse;
+    this.snapshot = snapshot;
+  }
+
+  /** Writing the next delta segment (or a full snapshot if there is none to build on) */
+  public Path checkpoint() throws IOException {
+    if (!Files.exists(snapshot) || !warehouse.tracksChanges()) {
+      synchronized (snapshotLock) {
+        warehouse.save(snapshot);
+      }
+      return snapshot;
+    }
+    return warehouse.checkpoint(snapshot);
+  }
+
+  /**
+   * Folding the snapshot and its delta segments into a new snapshot and deleting
+   * the merged segments; deltas written meanwhile stay for the next load
+   */
+  public void compact() throws IOException {
+    synchronized (snapshotLock) {
+      if (!Files.exists(snapshot) || WarehouseCodec.deltaFiles(snapshot, 0).isEmpty()) return;
+      Warehouse merged = Warehouse.load(snapshot);
+      WarehouseCodec.write(merged, snapshot);
+      WarehouseCodec.deleteDeltas(snapshot, merged.checkpointSeq());
+    }
+  }
+
+  /** Checkpointing every intervalMillis and compacting after every compactEvery checkpoints */
+  public synchronized void start(long intervalMillis, int compactEvery) {
+    if (intervalMillis <= 0) throw new IllegalArgumentException("intervalMillis must be > 0");
+    if (compactEvery <= 0) throw new IllegalArgumentException("compactEvery must be > 0");
+    if (scheduler != null) throw new IllegalStateException("already started");
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "warehouse-checkpointer"));
+    compactor = Executors.newSingleThreadExecutor(r -> daemon(r, "warehouse-compactor"));
+    scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        checkpoint();
+        failure = null;
+        if (++sinceCompaction >= compactEvery) {
+          sinceCompaction = 0;
+          compactor.execute(this::compactInBackground);
+        }
+      } catch (IOException e) {
+        // the journal still holds everything; trying again next round
+        failure = e;
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Failure of the last background checkpoint or compaction, or null if it succeeded */
+  public IOException failure() { return failure; }
+
+  /**
+   * Stopping the timer and waiting for a running checkpoint or compaction to
+   * finish; throws the last background failure if it was never recovered from
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (scheduler == null) return;
+    try {
+      // the checkpoint task may still hand work to the compactor, so it stops first
+      scheduler.shutdown();
+      scheduler.awaitTermination(1, TimeUnit.MINUTES);
+      compactor.shutdown();
+      compactor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    scheduler = null;
+    compactor = null;
+    IOException e = failure;
+    if (e != null) throw e;
+  }
+
+  private void compactInBackground() {
+    try {
+      compact();
+      failure = null;
+    } catch (IOException e) {
+      // the deltas are still there; the next compaction picks them up
+      failure = e;
+    }
+  }
+
+  private static Thread daemon(Runnable r, String name) {
+    Thread t = new Thread(r, name);
+    t.setDaemon(true);
+    return t;
+  }
+}
@@ -1,14 +1,15 @@
-import java.util.Iterator;
 import java.util.Scanner;
 
 public class ClerkMenuState implements State {
 
     private final Context context;
     private final Warehouse warehouse;
+    private final Console out;
 
     public ClerkMenuState(Context context, Warehouse warehouse) {
         this.context = context;
         this.warehouse = warehouse;
+        this.out = context.getConsole();
     }
 
     @Override
@@ -16,15 +17,15 @@ public class ClerkMenuState implements State {
         Scanner in = context.getScanner();
 
         // showing main menu for clerk actions
-        System.out.println("\n=== Clerk Menu ===");
-        System.out.println("1) Add client");
-        System.out.println("2) Show products (qty + price)");
-        System.out.println("3) Show all clients");
-        System.out.println("4) Show clients with outstanding balance");
-        System.out.println("5) Record payment from client");
-        System.out.println("6) Become client");
-        System.out.println("0) Logout");
-        System.out.print("Choice: ");
+        out.println("\n=== Clerk Menu ===");
+        out.println("1) Add client");
+        out.println("2) Show products (qty + price)");
+        out.println("3) Show all clients");
+        out.println("4) Show clients with outstanding balance");
+        out.println("5) Record payment from client");
+        out.println("6) Become client");
+        out.println("0) Logout");
+        out.print("Choice: ");
 
         String choice = in.nextLine().trim();
 
@@ -52,7 +53,7 @@ public class ClerkMenuState implements State {
                 logout();
                 break;
             default:
-                System.out.println("Invalid option.");
+                out.println("Invalid option.");
                 break;
         }
     }
@@ -60,98 +61,85 @@ public class ClerkMenuState implements State {
     private void addClient() {
         Scanner in = context.getScanner();
         // taking client details and adding to warehouse
-        System.out.print("Name: ");
+        out.print("Name: ");
         String name = in.nextLine().trim();
-        System.out.print("Address: ");
+        out.print("Address: ");
         String address = in.nextLine().trim();
 
         Client c = warehouse.addClient(name, address);
         // confirming result of add operation
         if (c != null) {
-            System.out.println("Added client with ID: " + c.getId());
+            out.println("Added client with ID: " + c.getId());
         } else {
-            System.out.println("Failed to add client.");
+            out.println("Failed to add client.");
         }
     }
 
     private void showProducts() {
-        // listing all products with quantity and price
-        Iterator<Product> products = warehouse.getProducts();
-        while (products.hasNext()) {
-            Product p = products.next();
-            System.out.println(p);
-        }
+        // listing all products with quantity and price, one page at a time
+        PagedListing.show(context.getScanner(), out, warehouse::getProducts, Product::toString);
     }
 
     private void showAllClients() {
-        // displaying all registered clients
-        Iterator<Client> clients = warehouse.getClients();
-        while (clients.hasNext()) {
-            Client c = clients.next();
-            System.out.println(c.getId() + " : " + c.getName()
-                    + " | balance=" + c.getBalance());
-        }
+        // displaying all registered clients, one page at a time
+        PagedListing.show(context.getScanner(), out, warehouse::getClients,
+                c -> c.getId() + " : " + c.getName() + " | balance=" + Money.format(c.getBalanceCents()));
     }
 
     private void showClientsWithBalance() {
-        // showing only clients who owe balance
-        Iterator<Client> clients = warehouse.getClients();
-        while (clients.hasNext()) {
-            Client c = clients.next();
-            if (c.getBalance() > 0) {
-                System.out.println(c.getId() + " : " + c.getName()
-                        + " | balance=" + c.getBalance());
-            }
-        }
+        // showing only clients who owe balance, largest first, one page at a time (from the balance index)
+        PagedListing.show(context.getScanner(), out,
+                (token, size) -> warehouse.getClientsWithBalanceAbove(0, token, size),
+                c -> c.getId() + " : " + c.getName() + " | balance=" + Money.format(c.getBalanceCents()));
     }
 
     private void recordPayment() {
         Scanner in = context.getScanner();
 
-        System.out.print("Client ID or Name: ");
+        out.print("Client ID or Name: ");
         String input = in.nextLine().trim();
 
-        Client c = findClientByIdOrName(input);
+        Client c = context.findClient(input);
         if (c == null) {
-            System.out.println("Unknown client. Payment cancelled.");
+            out.println("Unknown client. Payment cancelled.");
             return; // back to menu, no crash
         }
 
-        System.out.print("Amount: ");
-        double amount;
+        out.print("Amount: ");
+        long amount;
         try {
-            amount = Double.parseDouble(in.nextLine().trim());
-        } catch (NumberFormatException e) {
-            System.out.println("Invalid amount. Payment cancelled.");
+            amount = Money.parse(in.nextLine());
+        } catch (IllegalArgumentException e) {
+            out.println("Invalid amount. Payment cancelled.");
             return;
         }
 
         if (amount <= 0) {
-            System.out.println("Amount must be positive. Payment cancelled.");
+            out.println("Amount must be positive. Payment cancelled.");
             return;
         }
 
         try {
-            warehouse.recordPayment(c.getId(), amount); // always use canonical ID
-            System.out.println("Payment of $" + amount + " recorded for client "
+            warehouse.recordPayment(c.getNumber(), amount);
+            out.println("Payment of $" + Money.format(amount) + " recorded for client "
                     + c.getId() + " (" + c.getName() + ").");
         } catch (IllegalArgumentException e) {
-            System.out.println("Error: " + e.getMessage());
+            out.println("Error: " + e.getMessage());
         }
     }
 
 
     private void becomeClient() {
         Scanner in = context.getScanner();
-        System.out.print("Enter Client ID or Name to become: ");
+        out.print("Enter Client ID or Name to become: ");
         String input = in.nextLine().trim();
 
-        Client c = findClientByIdOrName(input);
+        Client c = context.findClient(input);
         if (c != null) {
-            context.setCurrentClientId(c.getId(), Context.ST_CLERK_MENU);
+            context.setCurrentClient(c.getNumber(), Context.ST_CLERK_MENU);
             context.changeState(Context.EV_BECOME_CLIENT);
         } else {
-            System.out.println("Invalid client ID/name.");
+            out.println("Invalid client ID/name.");
         }
     }
 
@@ -160,21 +148,4 @@ public class ClerkMenuState implements State {
         context.changeState(Context.EV_LOGOUT);
     }
 
-    private Client findClientByIdOrName(String input) {
-        String target = input.trim().toLowerCase();
-        Iterator<Client> it = warehouse.getClients();
-
-        while (it.hasNext()) {
-            Client c = it.next();
-            if (c.getId().equalsIgnoreCase(input)) {
-                return c;
-            }
-            String name = c.getName();
-            if (name != null && name.trim().toLowerCase().equals(target)) {
-                return c;
-            }
-        }
-        return null;
-    }
-
 }
@@ -1,47 +1,132 @@
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Client implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private static final String CLIENT_PREFIX = "C";
-  private final String id;
+  // "C" + number is the id shown to people (see Ids)
+  private final int number;
   private String name;
   private String address;
   private final Wishlist wishlist = new Wishlist();
+  // invoices billed since the last checkpoint; older ones live in the invoice store
   private final List<Invoice> invoices = new ArrayList<>();
-  private double balance; // positive => client owes
+  private long balanceCents; // positive => client owes
+  // stored history: newest block in the store and how many invoices it holds
+  private transient InvoiceStore store;
+  private long historyHead;
+  private int historyCount;
+  // stored history once read; the GC may drop it under memory pressure, it is re-read then
+  private transient volatile SoftReference<List<Invoice>> history;
+  // the owning list's balance index, told about every balance change
+  transient BalanceIndex balanceIndex;
 
-  public Client(String name, String address, int idNum) {
+  public Client(String name, String address, int number) {
     this.name = name;
     this.address = address;
-    this.id = CLIENT_PREFIX + idNum;
+    this.number = number;
   }
 
-  public String getId() { return id; }
+  public int getNumber() { return number; }
+  public String getId() { return Ids.client(number); }
   public String getName() { return name; }
   public String getAddress() { return address; }
-  public double getBalance() { return balance; }
+  public long getBalanceCents() { return balanceCents; }
   public Wishlist getWishlist() { return wishlist; }
-  public List<Invoice> getInvoices() { return invoices; }
+
+  // getting all invoices, oldest first; stored history is read from disk on first use
+  public List<Invoice> getInvoices() {
+    if (historyCount == 0) return Collections.unmodifiableList(invoices);
+    List<Invoice> all = new ArrayList<>(historyCount + invoices.size());
+    all.addAll(storedInvoices());
+    all.addAll(invoices);
+    return Collections.unmodifiableList(all);
+  }
+
+  // counting invoices without reading stored history
+  public int getInvoiceCount() { return historyCount + invoices.size(); }
+
+  // restoring saved balance with the invoice history left in store until needed
+  void restoreHistory(long savedBalanceCents, InvoiceStore savedStore, long head, int count) {
+    invoices.clear();
+    store = savedStore;
+    historyHead = head;
+    historyCount = count;
+    history = null;
+    changeBalance(savedBalanceCents);
+  }
+
+  // moving invoices billed since the last checkpoint into target
+  void spillInvoices(InvoiceStore target) throws IOException {
+    if (store != null && store != target && historyCount > 0) {
+      // saving under a new name: copying the whole history over once
+      List<Invoice> all = getInvoices();
+      historyHead = target.append(0, all);
+      historyCount = all.size();
+    } else if (!invoices.isEmpty()) {
+      historyHead = target.append(historyHead, invoices);
+      historyCount += invoices.size();
+      List<Invoice> cached = cachedHistory();
+      if (cached != null) {
+        List<Invoice> grown = new ArrayList<>(cached);
+        grown.addAll(invoices);
+        history = new SoftReference<>(grown);
+      }
+    }
+    invoices.clear();
+    store = target;
+  }
+
+  long historyHead() { return historyHead; }
+
+  int historyCount() { return historyCount; }
+
+  private List<Invoice> storedInvoices() {
+    List<Invoice> stored = cachedHistory();
+    if (stored == null) {
+      try {
+        stored = store.load(number, historyHead, historyCount);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read invoices of " + getId(), e);
+      }
+      history = new SoftReference<>(stored);
+    }
+    return stored;
+  }
+
+  private List<Invoice> cachedHistory() {
+    SoftReference<List<Invoice>> ref = history;
+    return (ref == null) ? null : ref.get();
+  }
 
   public void setName(String newName) { this.name = newName; }
   public void setAddress(String newAddress) { this.address = newAddress; }
 
   public void addInvoice(Invoice inv) {
     invoices.add(inv);
-    balance += inv.getTotal();
+    changeBalance(Money.plus(balanceCents, inv.getTotalCents()));
+  }
+
+  public void recordPayment(long amountCents) {
+    if (amountCents <= 0) throw new IllegalArgumentException("Payment must be positive");
+    changeBalance(Money.minus(balanceCents, amountCents));
   }
 
-  public void recordPayment(double amount) {
-    if (amount <= 0) throw new IllegalArgumentException("Payment must be positive");
-    balance -= amount;
+  private void changeBalance(long newBalanceCents) {
+    long old = balanceCents;
+    balanceCents = newBalanceCents;
+    BalanceIndex index = balanceIndex;
+    if (index != null) index.moved(this, old, newBalanceCents);
   }
 
   @Override
   public String toString() {
-    return "Client " + id + " | " + name + " | " + address +
-           " | Balance: $" + String.format("%.2f", balance);
+    return "Client " + getId() + " | " + name + " | " + address +
+           " | Balance: $" + Money.format(balanceCents);
   }
 }
@@ -1,27 +1,156 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class ClientList implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final List<Client> clients = new LinkedList<>();
-  private static ClientList clientList;
+  // primary index: byNumber.get(n) is client n (or null); lock-free reads, replaced when grown
+  private volatile AtomicReferenceArray<Client> byNumber = new AtomicReferenceArray<>(16);
+  // insertion order for getClients() (weakly consistent while inserting)
+  private final Queue<Client> order = new ConcurrentLinkedQueue<>();
+  // secondary index: case-folded name -> clients with that name, in insertion order
+  private final Map<String, List<Client>> byName = new ConcurrentHashMap<>();
+  // insertion order by position, for paging: slots [0, count) are filled; replaced when grown
+  private volatile Client[] byPosition = new Client[16];
+  private volatile int count;
+  // highest client number inserted, so a warehouse over this list numbers new clients after it
+  private volatile int highestNumber;
+  // secondary index: clients by balance, largest first; rebuilt after deserializing
+  private transient BalanceIndex balances = new BalanceIndex();
 
-  private ClientList() { }
+  // creating an independent client roster; most callers want the shared instance()
+  public ClientList() { }
 
-  public static ClientList instance() {
-    if (clientList == null) clientList = new ClientList();
-    return clientList;
+  // built on first use by the JVM's class-init lock, so racing threads see one roster
+  private static class Holder {
+    static final ClientList INSTANCE = new ClientList();
   }
 
-  public boolean insertClient(Client client) { return clients.add(client); }
+  public static ClientList instance() { return Holder.INSTANCE; }
 
-  public Iterator<Client> getClients() { return clients.iterator(); }
+  // inserts and renames are serialized; lookups and iteration never lock
+  public synchronized boolean insertClient(Client client) {
+    int n = client.getNumber();
+    if (n <= 0) throw new IllegalArgumentException("Bad client number " + n);
+    AtomicReferenceArray<Client> arr = byNumber;
+    if (n >= arr.length()) {
+      AtomicReferenceArray<Client> grown = new AtomicReferenceArray<>(Math.max(n + 1, arr.length() * 2));
+      for (int i = 0; i < arr.length(); i++) grown.set(i, arr.get(i));
+      byNumber = arr = grown;
+    }
+    if (arr.get(n) != null) return false;
+    arr.set(n, client);
+    order.add(client);
+    indexName(client);
+    client.balanceIndex = balances;
+    balances.add(client);
+    Client[] slots = byPosition;
+    if (count == slots.length) byPosition = slots = Arrays.copyOf(slots, slots.length * 2);
+    slots[count] = client;
+    if (n > highestNumber) highestNumber = n;
+    count++; // publishing the slot
+    return true;
+  }
+
+  public Iterator<Client> getClients() { return order.iterator(); }
+
+  // listing up to size clients in insertion order, starting at position from
+  public Page<Client> page(int from, int size) {
+    if (from < 0 || size <= 0) throw new IllegalArgumentException("bad page request");
+    int n = count; // before byPosition, so every slot below n is visible
+    Client[] slots = byPosition;
+    int end = (int) Math.min((long) from + size, n);
+    List<Client> items = new ArrayList<>(Math.max(0, end - from));
+    for (int i = from; i < end; i++) items.add(slots[i]);
+    return new Page<>(items, (end < n) ? Integer.toString(end) : null);
+  }
+
+  // getting clients ordered by balance
+  public BalanceIndex balanceIndex() { return balances; }
+
+  // splitting the clients inserted so far evenly for parallel scans
+  public Spliterator<Client> spliterator() {
+    int n = count; // before byPosition, as in page()
+    return Spliterators.spliterator(byPosition, 0, n, Spliterator.NONNULL | Spliterator.IMMUTABLE);
+  }
+
+  public int size() { return count; }
+
+  int maxNumber() { return highestNumber; }
 
-  public Client search(String id) {
-    for (Client c : clients) if (c.getId().equals(id)) return c;
+  // finding client n ("C12" -> 12); null if there is none
+  public Client search(int number) {
+    AtomicReferenceArray<Client> arr = byNumber;
+    return (number > 0 && number < arr.length()) ? arr.get(number) : null;
+  }
+
+  /** Finding the first client whose name matches (trimmed, case-insensitive); null if none */
+  public Client findByName(String name) {
+    String key = nameKey(name);
+    if (key == null) return null;
+    List<Client> matches = byName.get(key);
+    if (matches == null) return null;
+    for (Client c : matches) {
+      // skipping entries renamed behind the index's back
+      if (key.equals(nameKey(c.getName()))) return c;
+    }
     return null;
   }
+
+  /** Resolving typed input as a client id ("C12", any case) first, then as a name; null if neither */
+  public Client findByIdOrName(String input) {
+    int number = Ids.parseClient(input);
+    Client c = (number > 0) ? search(number) : null;
+    return (c != null) ? c : findByName(input);
+  }
+
+  /** Renaming a client while keeping the name index consistent */
+  public synchronized void rename(Client client, String newName) {
+    unindexName(client);
+    client.setName(newName);
+    indexName(client);
+  }
+
+  private void indexName(Client client) {
+    String key = nameKey(client.getName());
+    if (key != null) byName.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(client);
+  }
+
+  private void unindexName(Client client) {
+    String key = nameKey(client.getName());
+    if (key == null) return;
+    List<Client> matches = byName.get(key);
+    if (matches == null) return;
+    matches.remove(client);
+    if (matches.isEmpty()) byName.remove(key);
+  }
+
+  // rebuilding the balance index and pointing every client back at it
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    balances = new BalanceIndex();
+    Client[] slots = byPosition;
+    for (int i = 0; i < count; i++) {
+      slots[i].balanceIndex = balances;
+      balances.add(slots[i]);
+    }
+  }
+
+  private static String nameKey(String name) {
+    return (name == null) ? null : name.trim().toLowerCase(Locale.ROOT);
+  }
 }
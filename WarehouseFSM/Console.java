@@ -0,0 +1,60 @@
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Buffered text output for the menus. Unlike System.out it neither locks nor
+ * flushes per line: a menu iteration renders into the buffer and Context
+ * flushes it once. Input read through input(...) flushes first, so a prompt is
+ * always on screen before the read blocks.
+ */
+public class Console extends PrintWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final boolean ownsSink;
+
+    private Console(OutputStream sink, boolean ownsSink) {
+        super(new BufferedWriter(new OutputStreamWriter(sink), BUFFER_SIZE), false);
+        this.ownsSink = ownsSink;
+    }
+
+    // writing to standard output; close() only flushes, System.out stays open
+    public static Console stdout() { return new Console(System.out, false); }
+
+    // writing to file (created or truncated), e.g. to capture a session
+    public static Console toFile(Path file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        return new Console(Files.newOutputStream(file), true);
+    }
+
+    // discarding everything, e.g. to time rendering without the terminal
+    public static Console nullSink() { return new Console(OutputStream.nullOutputStream(), true); }
+
+    // wrapping in so every read flushes this console first
+    public InputStream input(InputStream in) {
+        if (in == null) throw new IllegalArgumentException("in must not be null");
+        return new FilterInputStream(in) {
+            @Override public int read() throws IOException {
+                flush();
+                return super.read();
+            }
+
+            @Override public int read(byte[] b, int off, int len) throws IOException {
+                flush();
+                return super.read(b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (ownsSink) super.close();
+        else flush();
+    }
+}
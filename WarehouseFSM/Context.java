@@ -1,3 +1,4 @@
+import java.io.InputStream;
 import java.util.Scanner;
 
 public class Context {
@@ -19,13 +20,14 @@ public class Context {
     private int currentState;
     private boolean running = true;
 
-    // remembering active client and how client menu was entered
-    private String currentClientId = null;
+    // remembering active client (0 = none) and how client menu was entered
+    private int currentClient = 0;
     // tracking entry source for client (opening vs clerk)
     private int clientEntrySource = ST_OPENING;
 
-    // sharing single scanner instance across all states
-    private final Scanner scanner = new Scanner(System.in);
+    // sharing single console and scanner across all states; reading flushes the console
+    private final Console console;
+    private final Scanner scanner;
     private final Warehouse warehouse;
 
     // pre-creating concrete states for reuse
@@ -47,7 +49,15 @@ public class Context {
     };
 
     public Context(Warehouse warehouse) {
+        this(warehouse, System.in, Console.stdout());
+    }
+
+    // reading from in and writing to console (a file or null sink for scripted runs)
+    public Context(Warehouse warehouse, InputStream in, Console console) {
+        if (in == null || console == null) throw new IllegalArgumentException("in and console must not be null");
         this.warehouse = warehouse;
+        this.console = console;
+        this.scanner = new Scanner(console.input(in));
 
         // wiring states with shared context and backend
         this.openingState = new OpeningState(this, warehouse);
@@ -61,10 +71,13 @@ public class Context {
 
     public void run() {
         // looping while FSM is active and delegating to current state
+        // flushing once per menu iteration
         while (running) {
             getCurrentState().run();
+            console.flush();
         }
-        System.out.println("Exiting system. Goodbye.");
+        console.println("Exiting system. Goodbye.");
+        console.flush();
     }
 
     // FSM core
@@ -83,7 +96,7 @@ public class Context {
         }
 
         if (next == -1) {
-            System.out.println("Invalid action for this state.");
+            console.println("Invalid action for this state.");
             return;
         }
 
@@ -109,19 +122,30 @@ public class Context {
 
     // client context helpers
 
-    public void setCurrentClientId(String clientId, int entrySourceState) {
+    public void setCurrentClient(int clientNumber, int entrySourceState) {
         // setting active client and remembering entry origin
-        this.currentClientId = clientId;
+        this.currentClient = clientNumber;
         this.clientEntrySource = entrySourceState;
     }
 
-    public String getCurrentClientId() {
-        return currentClientId;
+    // active client's number, 0 if none
+    public int getCurrentClient() {
+        return currentClient;
     }
 
     public void clearCurrentClient() {
         // clearing active client context
-        this.currentClientId = null;
+        this.currentClient = 0;
+    }
+
+    // resolving typed input: an id like "C12" (any case) first, then an exact name (case-insensitive)
+    public Client findClient(String input) {
+        return warehouse.findClientByIdOrName(input);
+    }
+
+    // resolving typed input: an id like "P7" (any case) first, then an exact name (case-insensitive)
+    public Product findProduct(String input) {
+        return warehouse.findProductByIdOrName(input);
     }
 
     // shared across states
@@ -134,6 +158,10 @@ public class Context {
         return scanner;
     }
 
+    public Console getConsole() {
+        return console;
+    }
+
     public void stop() {
         // stopping main loop and shutting down FSM
         running = false;
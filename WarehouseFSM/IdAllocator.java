@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handing out unique positive numbers (client and product numbers) to any
+ * number of threads. Each thread takes a block of numbers off a shared
+ * high-water mark and counts through it in a thread-local range, so the shared
+ * counter is touched once per block instead of once per number. A thread's
+ * blocks start at one number and double up to maxBlock while it keeps
+ * allocating, so a thread that only adds the odd client leaves small gaps.
+ *
+ * Every number below highWater() has been given to some block. Passing a saved
+ * mark back to advanceTo after a restart keeps numbers unique across runs; the
+ * Warehouse saves one past the highest number in use rather than highWater(),
+ * so the unused tails of blocks held at save time are handed out again.
+ */
+public final class IdAllocator implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final int maxBlock;
+  // first number not yet given to any block
+  private final AtomicLong highWater = new AtomicLong(1);
+  // numbers below floor are taken (raised by advanceTo); ranges still below it are dropped
+  private volatile int floor = 1;
+  private transient ThreadLocal<Range> ranges = ThreadLocal.withInitial(Range::new);
+
+  // one thread's current block [next, end) and the size of its next block
+  private static final class Range {
+    int next;
+    int end;
+    int block = 1;
+  }
+
+  // creating an allocator starting at 1; threads take at most maxBlock numbers at a time
+  public IdAllocator(int maxBlock) {
+    if (maxBlock <= 0) throw new IllegalArgumentException("maxBlock must be > 0");
+    this.maxBlock = maxBlock;
+  }
+
+  // next unused number; no shared write unless this thread's block is used up
+  public int next() {
+    Range r = ranges.get();
+    if (r.next >= r.end || r.next < floor) refill(r);
+    return r.next++;
+  }
+
+  // first number not yet handed to any thread; save this to stay unique after a restart
+  public int highWater() { return (int) highWater.get(); }
+
+  /**
+   * Making sure no number below next is handed out from now on (restoring a
+   * saved high-water mark, or a number loaded from a snapshot or journal plus one).
+   */
+  public synchronized void advanceTo(int next) {
+    if (next <= floor) return;
+    highWater.accumulateAndGet(next, Math::max);
+    floor = next;
+  }
+
+  private void refill(Range r) {
+    int size = r.block;
+    long start = highWater.getAndAdd(size);
+    if (start + size > Integer.MAX_VALUE) {
+      highWater.getAndAdd(-size);
+      throw new IllegalStateException("no numbers left");
+    }
+    r.next = (int) start;
+    r.end = (int) start + size;
+    r.block = Math.min(maxBlock, size * 2);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    ranges = ThreadLocal.withInitial(Range::new);
+  }
+
+  @Override
+  public String toString() {
+    return "IdAllocator{highWater=" + highWater.get() + ", maxBlock=" + maxBlock + "}";
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Client and product ids as people see them ("C12", "P7"). Inside the warehouse
+ * a client or product is just its number (12, 7), which indexes the lists'
+ * arrays directly; this class is the one place that turns numbers into labels
+ * and typed-in labels back into numbers, for menus, messages and file formats.
+ */
+public final class Ids {
+  public static final char CLIENT_PREFIX = 'C';
+  public static final char PRODUCT_PREFIX = 'P';
+
+  private Ids() { }
+
+  // "C" + number
+  public static String client(int number) { return CLIENT_PREFIX + Integer.toString(number); }
+
+  // "P" + number
+  public static String product(int number) { return PRODUCT_PREFIX + Integer.toString(number); }
+
+  /** Parsing "C12" (any case, surrounding spaces allowed) to 12; -1 if text is not a client id */
+  public static int parseClient(String text) { return parse(text, CLIENT_PREFIX); }
+
+  /** Parsing "P7" (any case, surrounding spaces allowed) to 7; -1 if text is not a product id */
+  public static int parseProduct(String text) { return parse(text, PRODUCT_PREFIX); }
+
+  // prefix, then 1..n digits forming a positive int
+  private static int parse(String text, char prefix) {
+    if (text == null) return -1;
+    int start = 0;
+    int end = text.length();
+    while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+    while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+    if (end - start < 2 || Character.toUpperCase(text.charAt(start)) != prefix) return -1;
+    int n = 0;
+    for (int i = start + 1; i < end; i++) {
+      char ch = text.charAt(i);
+      if (ch < '0' || ch > '9' || n > (Integer.MAX_VALUE - (ch - '0')) / 10) return -1;
+      n = n * 10 + (ch - '0');
+    }
+    return (n > 0) ? n : -1;
+  }
+}
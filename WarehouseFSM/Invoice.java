@@ -1,53 +1,92 @@
 import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Invoice implements Serializable {
-  private static final long serialVersionUID = 1L;
+  private static final long serialVersionUID = 2L;
 
-  private final String id = "I-" + UUID.randomUUID().toString().substring(0, 8);
-  private final String clientId;
-  private final Date createdAt = new Date();
-  private final Map<String, Line> lines = new LinkedHashMap<>();
-  private double total;
+  // counting up from a clock-derived start, so ids stay unique across restarts
+  // without a persisted counter (as long as a run averaged under 1000 invoices/ms)
+  private static final AtomicLong NEXT_NUMBER = new AtomicLong(System.currentTimeMillis() * 1000);
+
+  private final String id;
+  private final int clientNumber;
+  private final long createdAt; // epoch millis
+  private Line[] lines;
+  private int lineCount;
+  private long totalCents;
 
   public static class Line implements Serializable {
-    public final String productId;
+    private static final long serialVersionUID = 2L;
+
+    public final int productNumber;
     public final String productName;
     public final int qty;
-    public final double unitPrice;
-    public Line(String productId, String productName, int qty, double unitPrice) {
-      this.productId = productId; this.productName = productName;
-      this.qty = qty; this.unitPrice = unitPrice;
+    public final long unitCents;
+    public Line(int productNumber, String productName, int qty, long unitCents) {
+      this.productNumber = productNumber; this.productName = productName;
+      this.qty = qty; this.unitCents = unitCents;
     }
-    public double lineTotal() { return qty * unitPrice; }
+    public long lineTotalCents() { return Money.times(unitCents, qty); }
     @Override public String toString() {
-      return productName + " (" + productId + ") x " + qty + " @ $" + unitPrice + " = $" + lineTotal();
+      return productName + " (" + Ids.product(productNumber) + ") x " + qty + " @ $" + Money.format(unitCents)
+          + " = $" + Money.format(lineTotalCents());
     }
   }
 
-  public Invoice(String clientId) { this.clientId = clientId; }
+  public Invoice(int clientNumber) { this(clientNumber, 1); }
 
-  public void addLine(String productId, String productName, int qty, double unitPrice) {
-    Line l = new Line(productId, productName, qty, unitPrice);
-    lines.put(productId + "#" + lines.size(), l);
-    total += l.lineTotal();
+  // sizing for the number of lines the caller is about to add
+  public Invoice(int clientNumber, int expectedLines) {
+    this("I-" + Long.toString(NEXT_NUMBER.getAndIncrement(), 36), clientNumber, System.currentTimeMillis(),
+        expectedLines);
+  }
+
+  // rebuilding a saved invoice; lines are re-added with addLine
+  Invoice(String id, int clientNumber, long createdAt, int expectedLines) {
+    this.id = id; this.clientNumber = clientNumber; this.createdAt = createdAt;
+    this.lines = new Line[Math.max(expectedLines, 1)];
+  }
+
+  public void addLine(int productNumber, String productName, int qty, long unitCents) {
+    if (lineCount == lines.length) lines = Arrays.copyOf(lines, lineCount * 2);
+    Line l = new Line(productNumber, productName, qty, unitCents);
+    lines[lineCount++] = l;
+    totalCents = Money.plus(totalCents, l.lineTotalCents());
   }
 
   public String getId() { return id; }
-  public String getClientId() { return clientId; }
-  public double getTotal() { return total; }
-  public Date getCreatedAt() { return createdAt; }
-  public Iterable<Line> getLines() { return lines.values(); }
+  public int getClientNumber() { return clientNumber; }
+  public long getTotalCents() { return totalCents; }
+  public long getCreatedAt() { return createdAt; }
+  public int getLineCount() { return lineCount; }
+  public Line getLine(int i) {
+    if (i < 0 || i >= lineCount) throw new IndexOutOfBoundsException("line " + i);
+    return lines[i];
+  }
+
+  // read-only view over the lines added so far
+  public List<Line> getLines() {
+    Line[] ls = lines;
+    int n = lineCount;
+    return new AbstractList<Line>() {
+      @Override public Line get(int i) {
+        if (i < 0 || i >= n) throw new IndexOutOfBoundsException("line " + i);
+        return ls[i];
+      }
+      @Override public int size() { return n; }
+    };
+  }
 
   @Override public String toString() {
     StringBuilder sb = new StringBuilder();
-    sb.append("Invoice ").append(id).append(" for ").append(clientId)
-      .append(" @ ").append(createdAt).append("\n");
-    for (Line l : lines.values()) sb.append("  - ").append(l).append("\n");
-    sb.append("TOTAL: $").append(total);
+    sb.append("Invoice ").append(id).append(" for ").append(Ids.client(clientNumber))
+      .append(" @ ").append(new Date(createdAt)).append("\n");
+    for (int i = 0; i < lineCount; i++) sb.append("  - ").append(lines[i]).append("\n");
+    sb.append("TOTAL: $").append(Money.format(totalCents));
     return sb.toString();
   }
 }
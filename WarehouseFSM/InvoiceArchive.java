@@ -0,0 +1,385 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar copy of every billed invoice line for reporting scans. Each field
+ * (client, product, qty, unit price, billing time) is its own primitive array,
+ * in fixed-size chunks, so an aggregation streams through contiguous memory
+ * instead of walking Client -> Invoice -> Line objects. Clients and products
+ * are stored as their numbers, which also index the per-id totals.
+ *
+ * Appends are serialized; a scan reads the rows published when it starts and
+ * never blocks or sees a half-written invoice.
+ *
+ * Checkpoints persist the rows appended since the previous one to
+ * "<snapshot>.archive" (fixed-width rows after a header); a snapshot or delta
+ * records how many rows it covers. A loaded archive reads those rows back on
+ * its first query, while new invoices keep appending after them.
+ */
+public class InvoiceArchive {
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int NONE = -1;
+  private static final int MAGIC = 0x57484941; // "WHIA"
+  private static final int HEADER = 8;
+  // client, product, qty, unit cents, billing time
+  private static final int ROW_BYTES = 4 + 4 + 4 + 8 + 8;
+  private static final int IO_ROWS = 1 << 12;
+
+  // one chunk of rows, one array per column
+  private static final class Chunk {
+    final int[] client = new int[CHUNK_SIZE];
+    final int[] product = new int[CHUNK_SIZE];
+    final int[] qty = new int[CHUNK_SIZE];
+    final long[] unitCents = new long[CHUNK_SIZE];
+    final long[] createdAt = new long[CHUNK_SIZE];
+  }
+
+  // written under this; readers go through the volatile fields
+  private volatile Chunk[] chunks = new Chunk[0];
+  // highest client and product number archived, to size per-id totals
+  private volatile int maxClient;
+  private volatile int maxProduct;
+  // rows visible to scans; written last, so everything below it is complete
+  private volatile int rows;
+  // archive file the first persisted rows are in; null until persisted or loaded
+  private volatile Path file;
+  // rows already in file, guarded by this
+  private int persisted;
+  // rows [0, stored) still only in file; 0 once read (guarded by loadLock, read without it)
+  private volatile int stored;
+  private final Object loadLock = new Object();
+
+  // an empty archive
+  public InvoiceArchive() { }
+
+  // an archive whose first rows are the ones saved in file; new rows append after them
+  InvoiceArchive(Path file, int rows) {
+    if (rows < 0) throw new IllegalArgumentException("rows must be >= 0");
+    this.file = file;
+    this.persisted = rows;
+    this.stored = rows;
+    this.rows = rows;
+  }
+
+  // "<snapshot>.archive"
+  static Path fileFor(Path snapshot) {
+    Path file = snapshot.toAbsolutePath().normalize();
+    return file.resolveSibling(file.getFileName() + ".archive");
+  }
+
+  /** Appending every line of a billed invoice */
+  public synchronized void append(Invoice inv) {
+    int client = inv.getClientNumber();
+    long createdAt = inv.getCreatedAt();
+    int n = rows;
+    for (int k = 0; k < inv.getLineCount(); k++) {
+      Invoice.Line l = inv.getLine(k);
+      Chunk c = chunkFor(n);
+      int i = n & (CHUNK_SIZE - 1);
+      c.client[i] = client;
+      c.product[i] = l.productNumber;
+      if (l.productNumber > maxProduct) maxProduct = l.productNumber;
+      c.qty[i] = l.qty;
+      c.unitCents[i] = l.unitCents;
+      c.createdAt[i] = createdAt;
+      n++;
+    }
+    if (client > maxClient) maxClient = client;
+    rows = n;
+  }
+
+  // counting archived invoice lines
+  public int size() { return rows; }
+
+  // starting a filtered aggregation over everything archived so far
+  public Query query() {
+    if (stored > 0) load();
+    return new Query();
+  }
+
+  /**
+   * Writing the rows appended since the last call to to (every row when to is a
+   * different file), then forcing it; returns how many rows to now holds. The
+   * caller keeps appends out meanwhile (Warehouse holds every client stripe).
+   */
+  int persist(Path to) throws IOException {
+    // outside this monitor: loading takes it per chunk
+    if (!to.equals(file) && stored > 0) load();
+    synchronized (this) {
+      if (!to.equals(file)) persisted = 0;
+      try (FileChannel ch = FileChannel.open(to, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        ByteBuffer buf = ByteBuffer.allocate(IO_ROWS * ROW_BYTES);
+        if (persisted == 0) {
+          buf.putInt(MAGIC).putInt(0).flip();
+          writeFully(ch, buf, 0);
+        }
+        // rows past the count a snapshot recorded (a crash after persisting) are overwritten here
+        long at = HEADER + (long) persisted * ROW_BYTES;
+        int n = rows;
+        for (int row = persisted; row < n; ) {
+          buf.clear();
+          for (int end = Math.min(n, row + IO_ROWS); row < end; row++) {
+            Chunk c = chunks[row >>> CHUNK_BITS];
+            int i = row & (CHUNK_SIZE - 1);
+            buf.putInt(c.client[i]).putInt(c.product[i]).putInt(c.qty[i]).putLong(c.unitCents[i]).putLong(c.createdAt[i]);
+          }
+          buf.flip();
+          at += writeFully(ch, buf, at);
+        }
+        ch.force(false);
+        file = to;
+        persisted = n;
+        return n;
+      }
+    }
+  }
+
+  // rows in the archive file as of the last persist (or load)
+  synchronized int persistedRows() { return persisted; }
+
+  // reading rows [0, stored) from file once; appends go on meanwhile, into later rows
+  private void load() {
+    synchronized (loadLock) {
+      int n = stored;
+      if (n == 0) return;
+      int topClient = 0;
+      int topProduct = 0;
+      try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER);
+        readFully(ch, buf, 0);
+        if (buf.getInt() != MAGIC) throw new IOException("Not an invoice archive: " + file);
+        if (ch.size() < HEADER + (long) n * ROW_BYTES) throw new IOException("invoice archive " + file + " is incomplete");
+        buf = ByteBuffer.allocate(IO_ROWS * ROW_BYTES);
+        long at = HEADER;
+        for (int row = 0; row < n; ) {
+          int end = Math.min(n, row + IO_ROWS);
+          buf.clear().limit((end - row) * ROW_BYTES);
+          readFully(ch, buf, at);
+          at += buf.limit();
+          for (; row < end; row++) {
+            Chunk c = loadedChunk(row);
+            int i = row & (CHUNK_SIZE - 1);
+            c.client[i] = buf.getInt();
+            c.product[i] = buf.getInt();
+            c.qty[i] = buf.getInt();
+            c.unitCents[i] = buf.getLong();
+            c.createdAt[i] = buf.getLong();
+            topClient = Math.max(topClient, c.client[i]);
+            topProduct = Math.max(topProduct, c.product[i]);
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read invoice archive " + file, e);
+      }
+      synchronized (this) {
+        if (topClient > maxClient) maxClient = topClient;
+        if (topProduct > maxProduct) maxProduct = topProduct;
+      }
+      // published last: a scan that sees 0 here sees every loaded row
+      stored = 0;
+    }
+  }
+
+  private synchronized Chunk loadedChunk(int row) { return chunkFor(row); }
+
+  private static int writeFully(FileChannel ch, ByteBuffer buf, long at) throws IOException {
+    int n = buf.remaining();
+    while (buf.hasRemaining()) ch.write(buf, at + n - buf.remaining());
+    return n;
+  }
+
+  private static void readFully(FileChannel ch, ByteBuffer buf, long at) throws IOException {
+    int n = buf.remaining();
+    while (buf.hasRemaining()) {
+      if (ch.read(buf, at + n - buf.remaining()) < 0) throw new IOException("invoice archive ends early");
+    }
+    buf.flip();
+  }
+
+  /**
+   * Filters plus aggregations over the archive; each aggregation is one scan.
+   * Filters narrow the rows: client(number), product(number), between(from, to).
+   */
+  public final class Query {
+    private int client = NONE;
+    private int product = NONE;
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+
+    private Query() { }
+
+    public Query client(int clientNumber) {
+      client = clientNumber;
+      return this;
+    }
+
+    public Query product(int productNumber) {
+      product = productNumber;
+      return this;
+    }
+
+    // billed at or after fromMillis and before toMillis
+    public Query between(long fromMillis, long toMillis) {
+      if (fromMillis > toMillis) throw new IllegalArgumentException("from must not be after to");
+      from = fromMillis;
+      to = toMillis;
+      return this;
+    }
+
+    public long lines() {
+      long[] count = new long[1];
+      scan(rows, (c, i) -> count[0]++);
+      return count[0];
+    }
+
+    public long units() {
+      long[] sum = new long[1];
+      scan(rows, (c, i) -> sum[0] += c.qty[i]);
+      return sum[0];
+    }
+
+    // in cents
+    public long revenue() {
+      long[] cents = new long[1];
+      scan(rows, (c, i) -> cents[0] = Money.plus(cents[0], Money.times(c.unitCents[i], c.qty[i])));
+      return cents[0];
+    }
+
+    // by product number, ascending
+    public Map<Integer, Long> unitsByProduct() {
+      // rows first: every number in those rows is at most the maximum read next
+      int n = rows;
+      long[] units = new long[maxProduct + 1];
+      scan(n, (c, i) -> units[c.product[i]] += c.qty[i]);
+      Map<Integer, Long> out = new LinkedHashMap<>();
+      for (int number = 1; number < units.length; number++) {
+        if (units[number] != 0) out.put(number, units[number]);
+      }
+      return out;
+    }
+
+    // in cents, by product number ascending
+    public Map<Integer, Long> revenueByProduct() { return revenueByProduct(false); }
+
+    // in cents, by product number ascending; parallel scans each chunk as its own
+    // task on the fork/join pool the caller runs in, then sums the per-chunk totals
+    public Map<Integer, Long> revenueByProduct(boolean parallel) {
+      int n = rows;
+      int size = maxProduct + 1;
+      IntStream chunkIndexes = IntStream.range(0, (n + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+      Totals sum = (parallel ? chunkIndexes.parallel() : chunkIndexes)
+          .mapToObj(k -> {
+            Totals t = new Totals(size);
+            int end = (int) Math.min(n, (long) (k + 1) << CHUNK_BITS);
+            scan(k << CHUNK_BITS, end, (c, i) -> t.add(c.product[i], Money.times(c.unitCents[i], c.qty[i])));
+            return t;
+          })
+          .reduce(Totals::merge)
+          .orElseGet(() -> new Totals(size));
+      return byNumber(sum.cents, sum.seen);
+    }
+
+    // in cents, by client number ascending
+    public Map<Integer, Long> revenueByClient() {
+      int n = rows;
+      long[] revenue = new long[maxClient + 1];
+      boolean[] seen = new boolean[revenue.length];
+      scan(n, (c, i) -> {
+        revenue[c.client[i]] = Money.plus(revenue[c.client[i]], Money.times(c.unitCents[i], c.qty[i]));
+        seen[c.client[i]] = true;
+      });
+      return byNumber(revenue, seen);
+    }
+
+    // units billed per calendar day at the given UTC offset
+    public SortedMap<LocalDate, Long> unitsByDay(ZoneOffset offset) {
+      long shift = offset.getTotalSeconds() * 1000L;
+      Map<Long, long[]> days = new HashMap<>();
+      scan(rows, (c, i) -> days.computeIfAbsent(Math.floorDiv(c.createdAt[i] + shift, 86_400_000L),
+          d -> new long[1])[0] += c.qty[i]);
+      SortedMap<LocalDate, Long> out = new TreeMap<>();
+      for (Map.Entry<Long, long[]> e : days.entrySet()) out.put(LocalDate.ofEpochDay(e.getKey()), e.getValue()[0]);
+      return out;
+    }
+
+    // visiting every matching row among the first n
+    private void scan(int n, RowSink sink) { scan(0, n, sink); }
+
+    // visiting every matching row in [start, end); start is a chunk boundary
+    private void scan(int start, int end, RowSink sink) {
+      Chunk[] all = chunks;
+      for (int base = start; base < end; base += CHUNK_SIZE) {
+        Chunk c = all[base >>> CHUNK_BITS];
+        int last = Math.min(CHUNK_SIZE, end - base);
+        for (int i = 0; i < last; i++) {
+          if (client != NONE && c.client[i] != client) continue;
+          if (product != NONE && c.product[i] != product) continue;
+          long t = c.createdAt[i];
+          if (t < from || t >= to) continue;
+          sink.accept(c, i);
+        }
+      }
+    }
+
+    private Map<Integer, Long> byNumber(long[] cents, boolean[] seen) {
+      Map<Integer, Long> out = new LinkedHashMap<>();
+      for (int number = 1; number < cents.length; number++) {
+        if (seen[number]) out.put(number, cents[number]);
+      }
+      return out;
+    }
+  }
+
+  private interface RowSink {
+    void accept(Chunk c, int i);
+  }
+
+  // cents per number, and which numbers had any row
+  private static final class Totals {
+    final long[] cents;
+    final boolean[] seen;
+
+    Totals(int size) {
+      cents = new long[size];
+      seen = new boolean[size];
+    }
+
+    void add(int number, long amount) {
+      cents[number] = Money.plus(cents[number], amount);
+      seen[number] = true;
+    }
+
+    Totals merge(Totals other) {
+      for (int number = 0; number < cents.length; number++) {
+        if (other.seen[number]) add(number, other.cents[number]);
+      }
+      return this;
+    }
+  }
+
+  // the chunk holding row, created under this; rows of a loaded archive may start past the last chunk
+  private Chunk chunkFor(int row) {
+    int index = row >>> CHUNK_BITS;
+    Chunk[] all = chunks;
+    if (index >= all.length) {
+      all = Arrays.copyOf(all, index + 1);
+      chunks = all;
+    }
+    if (all[index] == null) all[index] = new Chunk();
+    return all[index];
+  }
+}
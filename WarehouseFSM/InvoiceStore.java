@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only file of client invoice history, kept beside a snapshot as
+ * "<snapshot>.invoices". At each checkpoint the invoices a client was billed
+ * since the previous one are appended as one block that points back to the
+ * client's previous block, so a loaded client only carries (newest block,
+ * count) and its history is read page by page on first use.
+ *
+ * One instance per file is shared by every warehouse in the JVM (e.g. the live
+ * one and a compaction's offline copy), so appends never interleave.
+ */
+final class InvoiceStore {
+  private static final int MAGIC = 0x5748494E; // "WHIN"
+  private static final int HEADER = 8;
+  private static final int PAGE_SIZE = 1 << 12;
+  private static final Map<Path, InvoiceStore> OPEN = new ConcurrentHashMap<>();
+
+  private final FileChannel ch;
+  // guarded by this: appends go through one buffered writer at the end of the file
+  private final WarehouseCodec.Writer out;
+  private long end;
+
+  private InvoiceStore(Path file) throws IOException {
+    ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (ch.size() == 0) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(0);
+      header.flip();
+      while (header.hasRemaining()) ch.write(header, HEADER - header.remaining());
+      ch.force(true);
+    } else if (new WarehouseCodec.Reader(ch, 0, HEADER).readInt() != MAGIC) {
+      throw new IOException("Not an invoice store: " + file);
+    }
+    // a block torn by a crash is never referenced, so appending after it is safe
+    end = Math.max(ch.size(), HEADER);
+    out = new WarehouseCodec.Writer(ch, PAGE_SIZE);
+  }
+
+  // getting the shared store beside snapshot, opening it on first use
+  static InvoiceStore forSnapshot(Path snapshot) throws IOException {
+    Path file = snapshot.toAbsolutePath().normalize();
+    file = file.resolveSibling(file.getFileName() + ".invoices");
+    try {
+      return OPEN.computeIfAbsent(file, f -> {
+        try {
+          return new InvoiceStore(f);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Appending a client's invoices as one block after block prev (0 = none); returns the new block */
+  synchronized long append(long prev, List<Invoice> invoices) throws IOException {
+    long at = end;
+    ch.position(at);
+    out.writeVarLong(prev);
+    out.writeVarUInt(invoices.size());
+    for (Invoice inv : invoices) WarehouseCodec.writeInvoice(out, inv);
+    out.flush();
+    end = ch.position();
+    return at;
+  }
+
+  // making appended blocks durable before a snapshot or delta refers to them
+  void force() throws IOException { ch.force(false); }
+
+  /** Reading the count invoices reachable from block head, oldest first */
+  List<Invoice> load(int clientNumber, long head, int count) throws IOException {
+    Invoice[] invoices = new Invoice[count];
+    int left = count;
+    for (long at = head; at != 0 && left > 0; ) {
+      // positional reads, so loads never disturb a concurrent append
+      WarehouseCodec.Reader in = new WarehouseCodec.Reader(ch, at, PAGE_SIZE);
+      long prev = in.readVarLong();
+      int n = in.readVarUInt();
+      if (n > left) throw new IOException("invoice history of " + Ids.client(clientNumber) + " is corrupt");
+      for (int i = left - n; i < left; i++) invoices[i] = WarehouseCodec.readInvoice(in, clientNumber);
+      left -= n;
+      at = prev;
+    }
+    if (left != 0) throw new IOException("invoice history of " + Ids.client(clientNumber) + " is incomplete");
+    return Arrays.asList(invoices);
+  }
+}
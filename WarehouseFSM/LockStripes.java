@@ -0,0 +1,78 @@
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// fixed pool of locks; each key hashes to one stripe so unrelated keys rarely contend
+public class LockStripes implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final ReentrantLock[] locks;
+  private final int mask;
+
+  // creating stripes; count is rounded up to a power of two
+  public LockStripes(int count) {
+    if (count <= 0) throw new IllegalArgumentException("count must be > 0");
+    int n = Integer.highestOneBit(count);
+    if (n < count) n <<= 1;
+    locks = new ReentrantLock[n];
+    for (int i = 0; i < n; i++) locks[i] = new ReentrantLock();
+    mask = n - 1;
+  }
+
+  // mapping key (a client or product number) to its stripe index
+  public int indexFor(int key) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  // locking the stripe for a single key
+  public void lock(int key) { locks[indexFor(key)].lock(); }
+
+  // unlocking the stripe for a single key
+  public void unlock(int key) { locks[indexFor(key)].unlock(); }
+
+  /**
+   * Locking the stripes of keys[0..count) in ascending stripe order so that
+   * two callers with overlapping keys can never deadlock. Returns the held
+   * stripe indexes, to be passed to unlockAll.
+   */
+  public int[] lockAll(int[] keys, int count) {
+    int[] idx = new int[count];
+    int n = 0;
+    for (int i = 0; i < count; i++) idx[n++] = indexFor(keys[i]);
+    Arrays.sort(idx);
+    int distinct = 0;
+    for (int i = 0; i < n; i++) {
+      if (distinct == 0 || idx[distinct - 1] != idx[i]) idx[distinct++] = idx[i];
+    }
+    int[] held = Arrays.copyOf(idx, distinct);
+    int locked = 0;
+    try {
+      for (; locked < held.length; locked++) locks[held[locked]].lock();
+    } catch (RuntimeException | Error e) {
+      while (--locked >= 0) locks[held[locked]].unlock();
+      throw e;
+    }
+    return held;
+  }
+
+  // whether key's stripe is among held (as returned by lockAll)
+  public boolean covers(int[] held, int key) {
+    return Arrays.binarySearch(held, indexFor(key)) >= 0;
+  }
+
+  // locking every stripe in ascending order (e.g. for a consistent snapshot)
+  public int[] lockEverything() {
+    int[] held = new int[locks.length];
+    for (int i = 0; i < held.length; i++) {
+      locks[i].lock();
+      held[i] = i;
+    }
+    return held;
+  }
+
+  // releasing stripes taken by lockAll, in reverse order
+  public void unlockAll(int[] held) {
+    for (int i = held.length - 1; i >= 0; i--) locks[held[i]].unlock();
+  }
+}
@@ -1,28 +1,31 @@
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 public class ManagerMenuState implements State {
 
     private final Context context;
     private final Warehouse warehouse;
+    private final Console out;
 
     public ManagerMenuState(Context context, Warehouse warehouse) {
         this.context = context;
         this.warehouse = warehouse;
+        this.out = context.getConsole();
     }
 
     @Override
     public void run() {
         Scanner in = context.getScanner();
 
-        System.out.println("\n=== Manager Menu ===");
-        System.out.println("1) Add product");
-        System.out.println("2) Display waitlist for a product");
-        System.out.println("3) Receive shipment");
-        System.out.println("4) Become clerk");
-        System.out.println("0) Logout");
-        System.out.print("Choice: ");
+        out.println("\n=== Manager Menu ===");
+        out.println("1) Add product");
+        out.println("2) Display waitlist for a product");
+        out.println("3) Receive shipment");
+        out.println("4) Become clerk");
+        out.println("5) Show reports");
+        out.println("0) Logout");
+        out.print("Choice: ");
 
         String choice = in.nextLine().trim();
 
@@ -39,11 +42,14 @@ public class ManagerMenuState implements State {
             case "4":
                 becomeClerk();
                 break;
+            case "5":
+                showReports();
+                break;
             case "0":
                 logout();
                 break;
             default:
-                System.out.println("Invalid option.");
+                out.println("Invalid option.");
                 break;
         }
     }
@@ -51,62 +57,62 @@ public class ManagerMenuState implements State {
     private void addProduct() {
         Scanner in = context.getScanner();
 
-        System.out.print("Product name: ");
+        out.print("Product name: ");
         String name = in.nextLine().trim();
 
-        System.out.print("Unit price: ");
-        double price;
+        out.print("Unit price: ");
+        long price;
         try {
-            price = Double.parseDouble(in.nextLine().trim());
-        } catch (NumberFormatException e) {
-            System.out.println("Invalid price. Product not added.");
+            price = Money.parse(in.nextLine());
+        } catch (IllegalArgumentException e) {
+            out.println("Invalid price. Product not added.");
             return;
         }
 
-        System.out.print("Initial quantity: ");
+        out.print("Initial quantity: ");
         int qty;
         try {
             qty = Integer.parseInt(in.nextLine().trim());
         } catch (NumberFormatException e) {
-            System.out.println("Invalid quantity. Product not added.");
+            out.println("Invalid quantity. Product not added.");
             return;
         }
 
         if (qty < 0) {
-            System.out.println("Quantity must be non-negative. Product not added.");
+            out.println("Quantity must be non-negative. Product not added.");
             return;
         }
 
         Product p = warehouse.addProduct(name, price, qty);
         if (p != null) {
-            System.out.println("Added product with ID: " + p.getId());
+            out.println("Added product with ID: " + p.getId());
         } else {
-            System.out.println("Failed to add product.");
+            out.println("Failed to add product.");
         }
     }
 
     // ID or Name - show waitlist entries for that product
     private void showWaitlistForProduct() {
         Scanner in = context.getScanner();
-        System.out.print("Product ID or Name: ");
+        out.print("Product ID or Name: ");
         String input = in.nextLine().trim();
 
-        Product p = findProductByIdOrName(input);
+        Product p = context.findProduct(input);
         if (p == null) {
-            System.out.println("Product not found.");
+            out.println("Product not found.");
             return;
         }
 
         String pid = p.getId();
-        List<WaitlistItem> items = warehouse.getProductWaitlist(pid);
+        List<WaitlistItem> items = warehouse.getProductWaitlist(p.getNumber());
         if (items == null || items.isEmpty()) {
-            System.out.println("No waitlist entries for product " + pid + ".");
+            out.println("No waitlist entries for product " + pid + ".");
             return;
         }
 
-        System.out.println("Waitlist for " + p.getName() + " (" + pid + "):");
+        out.println("Waitlist for " + p.getName() + " (" + pid + "):");
         for (WaitlistItem wi : items) {
-            System.out.println("- Client " + wi.getClientId()
+            out.println("- Client " + Ids.client(wi.getClientNumber())
                     + " waiting for " + wi.getQty()
                     + " (requested " + wi.getRequestedAt() + ")");
         }
@@ -115,36 +121,60 @@ public class ManagerMenuState implements State {
     // ID or Name - receiving shipment safely
     private void receiveShipment() {
         Scanner in = context.getScanner();
-        System.out.print("Product ID or Name: ");
+        out.print("Product ID or Name: ");
         String input = in.nextLine().trim();
 
-        Product p = findProductByIdOrName(input);
+        Product p = context.findProduct(input);
         if (p == null) {
-            System.out.println("Product not found. Shipment cancelled.");
+            out.println("Product not found. Shipment cancelled.");
             return;
         }
 
-        System.out.print("Quantity received: ");
+        out.print("Quantity received: ");
         int qty;
         try {
             qty = Integer.parseInt(in.nextLine().trim());
         } catch (NumberFormatException e) {
-            System.out.println("Invalid quantity. Shipment cancelled.");
+            out.println("Invalid quantity. Shipment cancelled.");
             return;
         }
 
         if (qty <= 0) {
-            System.out.println("Quantity must be positive. Shipment cancelled.");
+            out.println("Quantity must be positive. Shipment cancelled.");
             return;
         }
 
         try {
-            warehouse.receiveShipment(p.getId(), qty); // always use canonical ID
-            System.out.println("Shipment of " + qty + " units received for "
-                    + p.getName() + " (" + p.getId() + ").");
+            int allocated = warehouse.receiveShipment(p.getNumber(), qty);
+            out.println("Shipment of " + qty + " units received for "
+                    + p.getName() + " (" + p.getId() + "); "
+                    + allocated + " units allocated to waitlist.");
         } catch (IllegalArgumentException e) {
             // backend threw because of bad data; don't crash UI
-            System.out.println("Error receiving shipment: " + e.getMessage());
+            out.println("Error receiving shipment: " + e.getMessage());
+        }
+    }
+
+    // summary reports, computed in parallel over all clients and products
+    private void showReports() {
+        Reports reports = Reports.parallel(warehouse);
+
+        out.println("Outstanding balances: " + reports.outstandingBalances());
+        out.println("Stock valuation: $" + Money.format(reports.stockValuationCents()));
+
+        out.println("Top debtors:");
+        for (Client c : reports.topDebtors(10)) {
+            out.println("- " + c.getId() + " : " + c.getName() + " | balance=" + Money.format(c.getBalanceCents()));
+        }
+
+        out.println("Waitlisted demand:");
+        for (Map.Entry<Integer, Integer> e : reports.waitlistedDemand().entrySet()) {
+            out.println("- " + Ids.product(e.getKey()) + " : " + e.getValue() + " units");
+        }
+
+        out.println("Revenue per product:");
+        for (Map.Entry<Integer, Long> e : reports.revenueByProduct().entrySet()) {
+            out.println("- " + Ids.product(e.getKey()) + " : $" + Money.format(e.getValue()));
         }
     }
 
@@ -155,22 +185,4 @@ public class ManagerMenuState implements State {
     private void logout() {
         context.changeState(Context.EV_LOGOUT);
     }
-
-    // finding product by ID or name 
-    private Product findProductByIdOrName(String input) {
-        String target = input.trim().toLowerCase();
-        Iterator<Product> it = warehouse.getProducts();
-
-        while (it.hasNext()) {
-            Product p = it.next();
-            if (p.getId().equalsIgnoreCase(input)) {
-                return p;
-            }
-            String name = p.getName();
-            if (name != null && name.trim().toLowerCase().equals(target)) {
-                return p;
-            }
-        }
-        return null;
-    }
 }
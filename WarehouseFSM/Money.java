@@ -0,0 +1,48 @@
+import java.math.BigDecimal;
+import java.util.regex.Pattern;
+
+/**
+ * Money is a primitive long count of cents everywhere in the warehouse (prices,
+ * invoice lines and totals, balances, payments), so sums are exact and stay
+ * allocation-free. This class holds the arithmetic, which fails on overflow
+ * instead of wrapping, and the conversions at the edges: parsing user input
+ * and display. Files store the cents themselves.
+ */
+public final class Money {
+  public static final long ZERO = 0L;
+  // plain decimal dollars: optional minus, digits, at most 2 decimals ("12.500", "1e3" do not match)
+  private static final Pattern AMOUNT = Pattern.compile("-?\\d+(\\.\\d{1,2})?");
+
+  private Money() { }
+
+  public static long plus(long a, long b) { return Math.addExact(a, b); }
+
+  public static long minus(long a, long b) { return Math.subtractExact(a, b); }
+
+  // price of qty units at unitCents each
+  public static long times(long unitCents, int qty) { return Math.multiplyExact(unitCents, (long) qty); }
+
+  /**
+   * Parsing a dollar amount such as "12", "12.5" or "12.50". Anything else is an
+   * error, including more than 2 decimals ("12.500") and exponents ("1e3").
+   */
+  public static long parse(String text) {
+    if (text == null) throw new IllegalArgumentException("amount must not be null");
+    String s = text.trim();
+    if (!AMOUNT.matcher(s).matches()) {
+      throw new IllegalArgumentException("not an amount with at most 2 decimals: " + text);
+    }
+    try {
+      return new BigDecimal(s).movePointRight(2).longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("amount out of range: " + text);
+    }
+  }
+
+  // "19.99", "-0.05"
+  public static String format(long cents) {
+    long whole = cents / 100;
+    long frac = Math.abs(cents % 100);
+    return ((cents < 0 && whole == 0) ? "-" : "") + whole + ((frac < 10) ? ".0" : ".") + frac;
+  }
+}
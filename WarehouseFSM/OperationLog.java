@@ -0,0 +1,296 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of warehouse mutations. Each record is framed as
+ * [int length][int crc32][long seq][payload], the crc covering payload and
+ * seq, so a torn tail left by a crash is detected and cut off on replay.
+ * Sequence numbers keep growing across truncations and restarts: a snapshot
+ * records the last one it contains and replay skips everything up to it, so a
+ * crash between writing a snapshot and truncating the log applies nothing twice.
+ *
+ * Appends copy the record into an in-memory batch; whoever flushes next writes
+ * the whole batch with one write and at most one fsync (group commit):
+ * SYNC makes every caller wait for its own record to reach disk (concurrent
+ * callers share fsyncs), GROUP makes callers wait for a background flush every
+ * groupMillis, ASYNC returns at once and leaves flushing to the background.
+ */
+public class OperationLog implements AutoCloseable {
+
+  public enum Durability { SYNC, GROUP, ASYNC }
+
+  // writing one record's payload
+  public interface RecordWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  // applying one replayed record's payload
+  public interface RecordReader {
+    void read(DataInputStream in) throws IOException;
+  }
+
+  private static final int HEADER = 16;
+
+  private final FileChannel channel;
+  private final Durability durability;
+  private final long groupMillis;
+  private final Thread flusher;
+
+  // guarded by this: records appended but not yet written
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 12);
+  private long appendedSeq;
+  private long durableSeq;
+  private boolean closed;
+  private IOException failure;
+
+  // serializes the actual write + fsync so batches hit the file in order
+  private final Object flushLock = new Object();
+
+  /** Opening path for appending; records get sequence numbers after lastSeq (see replay) */
+  public OperationLog(Path path, Durability durability, long groupMillis, long lastSeq) throws IOException {
+    if (groupMillis <= 0) throw new IllegalArgumentException("groupMillis must be > 0");
+    if (lastSeq < 0) throw new IllegalArgumentException("lastSeq must be >= 0");
+    this.appendedSeq = lastSeq;
+    this.durableSeq = lastSeq;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+    this.durability = durability;
+    this.groupMillis = groupMillis;
+    if (durability == Durability.SYNC) {
+      flusher = null;
+    } else {
+      flusher = new Thread(this::flushLoop, "operation-log-flusher");
+      flusher.setDaemon(true);
+      flusher.start();
+    }
+  }
+
+  public Durability getDurability() { return durability; }
+
+  /** Sequence number of the last record appended (everything up to it is in memory) */
+  public synchronized long lastSeq() { return appendedSeq; }
+
+  /** Appending one record; returns once it is as durable as the mode promises */
+  public void append(RecordWriter record) {
+    awaitDurable(enqueue(record));
+  }
+
+  /**
+   * Appending one record without waiting for disk; returns its sequence number.
+   * Callers holding locks enqueue under them and call awaitDurable after
+   * releasing them, so others are not kept waiting on an fsync.
+   */
+  public long enqueue(RecordWriter record) {
+    byte[] payload;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+      record.write(new DataOutputStream(bytes));
+      payload = bytes.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+
+    long seq;
+    synchronized (this) {
+      if (closed) throw new IllegalStateException("operation log is closed");
+      if (failure != null) throw new UncheckedIOException(failure);
+      seq = ++appendedSeq;
+      crc.update(longBytes(seq));
+      writeInt(pending, payload.length);
+      writeInt(pending, (int) crc.getValue());
+      writeLong(pending, seq);
+      pending.write(payload, 0, payload.length);
+    }
+    return seq;
+  }
+
+  /** Returning once record seq (from enqueue) is as durable as the mode promises */
+  public void awaitDurable(long seq) {
+    switch (durability) {
+      case SYNC:
+        flush(true);
+        waitFor(seq);
+        break;
+      case GROUP:
+        waitFor(seq);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /** Writing and fsyncing everything appended so far */
+  public void sync() { flush(true); }
+
+  /** Dropping all records, e.g. right after a snapshot has captured them */
+  public void truncate() throws IOException {
+    synchronized (flushLock) {
+      flush(true);
+      channel.truncate(0);
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Writing out what is still pending and closing the file; throws the first
+   * write failure, if any, since the records after it never reached the log
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) return;
+      closed = true;
+      notifyAll(); // wakes the flusher, which sees closed and stops
+    }
+    // not interrupted: an interrupt inside write/force would close the channel under it
+    if (flusher != null) {
+      try {
+        flusher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      flush(true);
+    } finally {
+      channel.close();
+    }
+    synchronized (this) {
+      if (failure != null) throw failure;
+    }
+  }
+
+  /**
+   * Replaying every intact record numbered after afterSeq in order; a torn or
+   * corrupt tail is cut off so later appends start from a clean boundary.
+   * Returns the last sequence number in the log (afterSeq if none is later),
+   * for the OperationLog that continues it.
+   */
+  public static long replay(Path path, long afterSeq, RecordReader reader) throws IOException {
+    long last = afterSeq;
+    if (!Files.exists(path)) return last;
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long pos = 0;
+      long size = ch.size();
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      while (pos + HEADER <= size) {
+        header.clear();
+        if (readFully(ch, header, pos) < HEADER) break;
+        header.flip();
+        int len = header.getInt();
+        int crc = header.getInt();
+        long seq = header.getLong();
+        if (len < 0 || pos + HEADER + len > size) break;
+        ByteBuffer body = ByteBuffer.allocate(len);
+        if (readFully(ch, body, pos + HEADER) < len) break;
+        CRC32 check = new CRC32();
+        check.update(body.array(), 0, len);
+        check.update(longBytes(seq));
+        if ((int) check.getValue() != crc) break;
+        // records up to afterSeq are already in the loaded snapshot
+        if (seq > afterSeq) reader.read(new DataInputStream(new ByteArrayInputStream(body.array(), 0, len)));
+        last = Math.max(last, seq);
+        pos += HEADER + len;
+      }
+      if (pos < size) ch.truncate(pos);
+    } catch (EOFException e) {
+      throw new IOException("journal record shorter than its payload", e);
+    }
+    return last;
+  }
+
+  private void flushLoop() {
+    while (true) {
+      synchronized (this) {
+        if (closed) return;
+        try {
+          wait(groupMillis);
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (closed) return;
+      }
+      flush(durability == Durability.GROUP);
+    }
+  }
+
+  // writing the pending batch; with force, fsyncing it before marking it durable
+  private void flush(boolean force) {
+    synchronized (flushLock) {
+      ByteArrayOutputStream batch;
+      long upTo;
+      synchronized (this) {
+        if (pending.size() == 0 && durableSeq == appendedSeq) return;
+        batch = pending;
+        upTo = appendedSeq;
+        pending = new ByteArrayOutputStream(Math.max(1 << 12, batch.size()));
+      }
+      try {
+        ByteBuffer buf = ByteBuffer.wrap(batch.toByteArray());
+        while (buf.hasRemaining()) channel.write(buf);
+        if (force) channel.force(false);
+        synchronized (this) {
+          if (force || durability == Durability.ASYNC) durableSeq = Math.max(durableSeq, upTo);
+          notifyAll();
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          failure = e;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  private synchronized void waitFor(long seq) {
+    boolean interrupted = false;
+    while (durableSeq < seq && failure == null) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+    if (durableSeq < seq && failure != null) throw new UncheckedIOException(failure);
+  }
+
+  private static int readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+    int total = 0;
+    while (buf.hasRemaining()) {
+      int n = ch.read(buf, pos + total);
+      if (n < 0) break;
+      total += n;
+    }
+    return total;
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int v) {
+    out.write(v >>> 24);
+    out.write(v >>> 16);
+    out.write(v >>> 8);
+    out.write(v);
+  }
+
+  private static void writeLong(ByteArrayOutputStream out, long v) {
+    writeInt(out, (int) (v >>> 32));
+    writeInt(out, (int) v);
+  }
+
+  private static byte[] longBytes(long v) {
+    return ByteBuffer.allocate(8).putLong(v).array();
+  }
+}
@@ -0,0 +1,16 @@
+import java.util.List;
+
+// one page of a listing plus the token that continues it (null after the last page)
+public class Page<T> {
+  private final List<T> items;
+  private final String nextToken;
+
+  public Page(List<T> items, String nextToken) {
+    this.items = items;
+    this.nextToken = nextToken;
+  }
+
+  public List<T> getItems() { return items; }
+  public String getNextToken() { return nextToken; }
+  public boolean hasNext() { return nextToken != null; }
+}
@@ -0,0 +1,40 @@
+import java.util.Scanner;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// showing a long listing page by page: each page is rendered into the console's
+// buffer and goes out in one flush when the more/stop prompt reads input
+final class PagedListing {
+    static final int PAGE_SIZE = 25;
+
+    // fetching the page after token (null = first page)
+    interface Source<T> {
+        Page<T> page(String token, int size);
+    }
+
+    private PagedListing() { }
+
+    static <T> void show(Scanner in, Console out, Source<T> source, Function<T, String> render) {
+        show(in::nextLine, out, source, render);
+    }
+
+    // same, reading the more/stop answer from lines (a null line, end of input, stops)
+    static <T> void show(Supplier<String> lines, Console out, Source<T> source, Function<T, String> render) {
+        String token = null;
+        while (true) {
+            Page<T> page = source.page(token, PAGE_SIZE);
+            for (T item : page.getItems()) {
+                out.println(render.apply(item));
+            }
+            if (!page.hasNext()) {
+                return;
+            }
+            out.print("-- Enter for more, q to stop: ");
+            String answer = lines.get();
+            if (answer == null || answer.trim().equalsIgnoreCase("q")) {
+                return;
+            }
+            token = page.getNextToken();
+        }
+    }
+}
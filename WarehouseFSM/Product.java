@@ -1,46 +1,112 @@
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Product implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private static int counter = 1;
-  private final String id;
+  // "P" + number is the id shown to people (see Ids)
+  private final int number;
   private String name;
-  private double price;
-  private int stockQuantity;
+  private long priceCents;
+  // available (unreserved) units; updated with CAS so orders never need a lock for stock
+  private final AtomicInteger stockQuantity;
+  // units held by tryReserve and not yet committed or released
+  private final AtomicInteger reservedQuantity;
+  private AllocationPolicy allocationPolicy = AllocationPolicy.STRICT_FIFO;
 
-  public Product(String name, double price, int stockQuantity) {
-    this.id = "P" + counter++;
+  // creating a product under a number handed out by the warehouse's IdAllocator
+  public Product(int number, String name, long priceCents, int stockQuantity) {
+    this(number, name, priceCents, stockQuantity, 0, AllocationPolicy.STRICT_FIFO);
+  }
+
+  // rebuilding a saved product under its original number
+  Product(int number, String name, long priceCents, int stockQuantity, int reservedQuantity,
+          AllocationPolicy allocationPolicy) {
+    this.number = number;
     this.name = name;
-    this.price = price;
-    this.stockQuantity = stockQuantity;
+    this.priceCents = priceCents;
+    this.stockQuantity = new AtomicInteger(stockQuantity);
+    this.reservedQuantity = new AtomicInteger(reservedQuantity);
+    this.allocationPolicy = allocationPolicy;
   }
 
-  public String getId() { return id; }
+  public int getNumber() { return number; }
+  public String getId() { return Ids.product(number); }
   public String getName() { return name; }
-  public double getPrice() { return price; }
-  public int getStockQuantity() { return stockQuantity; }
+  public long getPriceCents() { return priceCents; }
+  public int getStockQuantity() { return stockQuantity.get(); }
+  public int getReservedQuantity() { return reservedQuantity.get(); }
+  public AllocationPolicy getAllocationPolicy() { return allocationPolicy; }
+
+  // changed through Warehouse (renameProduct, setProductPrice, ...), which journals and marks them
+  void setName(String name) { this.name = name; }
+  void setPriceCents(long priceCents) { this.priceCents = priceCents; }
+  void setStockQuantity(int q) { stockQuantity.set(q); }
+
+  // putting back saved stock and reserved counts (applying a checkpoint delta)
+  void restoreCounters(int stock, int reserved) {
+    stockQuantity.set(stock);
+    reservedQuantity.set(reserved);
+  }
+  void setAllocationPolicy(AllocationPolicy policy) {
+    if (policy == null) throw new IllegalArgumentException("policy must not be null");
+    this.allocationPolicy = policy;
+  }
+
+  // stock changes go through Warehouse, which holds the product stripe, journals and marks them
+
+  /** Reducing stock by up to qty atomically; returns actual fulfilled */
+  int fulfill(int qty) {
+    if (qty <= 0) return 0;
+    while (true) {
+      int have = stockQuantity.get();
+      int take = Math.min(have, qty);
+      if (take <= 0) return 0;
+      if (stockQuantity.compareAndSet(have, have - take)) return take;
+    }
+  }
+
+  /** Receiving qty into stock (lock-free add) */
+  void receive(int qty) {
+    if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
+    stockQuantity.getAndAdd(qty);
+  }
 
-  public void setName(String name) { this.name = name; }
-  public void setPrice(double price) { this.price = price; }
-  public void setStockQuantity(int q) { this.stockQuantity = q; }
+  /** Reserving exactly qty units if available; all or nothing */
+  boolean tryReserve(int qty) {
+    if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
+    while (true) {
+      int have = stockQuantity.get();
+      if (have < qty) return false;
+      if (stockQuantity.compareAndSet(have, have - qty)) {
+        reservedQuantity.getAndAdd(qty);
+        return true;
+      }
+    }
+  }
+
+  /** Turning qty reserved units into a sale */
+  void commit(int qty) {
+    takeReserved(qty);
+  }
 
-  /** Reducing stock by qty; returns actual fulfilled */
-  public int fulfill(int qty) {
-    int take = Math.min(stockQuantity, qty);
-    stockQuantity -= take;
-    return take;
+  /** Handing qty reserved units back to available stock */
+  void release(int qty) {
+    takeReserved(qty);
+    stockQuantity.getAndAdd(qty);
   }
 
-  /** Receiving qty into stock */
-  public void receive(int qty) {
+  private void takeReserved(int qty) {
     if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
-    stockQuantity += qty;
+    while (true) {
+      int held = reservedQuantity.get();
+      if (held < qty) throw new IllegalStateException("only " + held + " units reserved for " + getId());
+      if (reservedQuantity.compareAndSet(held, held - qty)) return;
+    }
   }
 
   @Override
   public String toString() {
-    return id + " | " + name + " | $" + price + " | qty=" + stockQuantity;
+    return getId() + " | " + getName() + " | $" + Money.format(getPriceCents()) + " | qty=" + getStockQuantity();
   }
 }
- 
\ No newline at end of file
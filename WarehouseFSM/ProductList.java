@@ -1,32 +1,136 @@
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
 
 public class ProductList implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private final List<Product> products = new LinkedList<>();
-  private static ProductList instance;
+  // insertion order so getProducts() lists P1..Pn as added (weakly consistent while inserting)
+  private final Queue<Product> order = new ConcurrentLinkedQueue<>();
+  // primary index: byNumber.get(n) is product n (or null); lock-free reads, replaced when grown
+  private volatile AtomicReferenceArray<Product> byNumber = new AtomicReferenceArray<>(16);
+  // secondary index: case-folded name -> products with that name, in insertion order
+  private final Map<String, List<Product>> byName = new ConcurrentHashMap<>();
+  // highest number in byNumber, so paging knows where to stop
+  private volatile int highestNumber;
+  private volatile int count;
 
-  private ProductList() {}
+  // creating an independent catalog; most callers want the shared instance()
+  public ProductList() {}
 
-  public static ProductList instance() {
-    if (instance == null) instance = new ProductList();
-    return instance;
+  // built on first use by the JVM's class-init lock, so racing threads see one catalog
+  private static class Holder {
+    static final ProductList INSTANCE = new ProductList();
   }
 
-  public boolean insertProduct(Product p) { return products.add(p); }
-  public Iterator<Product> getProducts() { return products.iterator(); }
+  public static ProductList instance() { return Holder.INSTANCE; }
 
-  public Product search(String id) {
-    for (Product p : products) if (p.getId().equals(id)) return p;
-    return null;
+  // inserts are serialized; lookups and iteration never lock
+  public synchronized boolean insertProduct(Product p) {
+    int n = p.getNumber();
+    if (n <= 0) throw new IllegalArgumentException("Bad product number " + n);
+    AtomicReferenceArray<Product> arr = byNumber;
+    if (n >= arr.length()) {
+      AtomicReferenceArray<Product> grown = new AtomicReferenceArray<>(Math.max(n + 1, arr.length() * 2));
+      for (int i = 0; i < arr.length(); i++) grown.set(i, arr.get(i));
+      byNumber = arr = grown;
+    }
+    if (arr.get(n) != null) return false;
+    arr.set(n, p);
+    order.add(p);
+    indexName(p);
+    if (n > highestNumber) highestNumber = n;
+    count++;
+    return true;
+  }
+
+  public Iterator<Product> getProducts() { return order.iterator(); }
+
+  // splitting by product number, so halves are always even
+  public Spliterator<Product> spliterator() {
+    return IntStream.rangeClosed(1, maxNumber())
+        .mapToObj(this::findByNumber)
+        .filter(Objects::nonNull)
+        .spliterator();
   }
 
-  /** for  Convenience - finding by ordinal P1..Pn; returns null if not found */
+  public int size() { return count; }
+
+  // listing up to size products in id-number order, starting at number from
+  public Page<Product> page(int from, int size) {
+    if (from < 0 || size <= 0) throw new IllegalArgumentException("bad page request");
+    List<Product> items = new ArrayList<>(size);
+    int max = maxNumber();
+    int n = from;
+    for (; n <= max && items.size() < size; n++) {
+      Product p = findByNumber(n);
+      if (p != null) items.add(p);
+    }
+    return new Page<>(items, (n <= max) ? Integer.toString(n) : null);
+  }
+
+  // highest product number in the catalog (0 if none)
+  int maxNumber() { return highestNumber; }
+
+  // finding product n ("P7" -> 7); null if there is none
   public Product findByNumber(int n) {
-    String id = "P" + n;
-    return search(id);
+    AtomicReferenceArray<Product> arr = byNumber;
+    return (n > 0 && n < arr.length()) ? arr.get(n) : null;
+  }
+
+  /** Finding the first product whose name matches (trimmed, case-insensitive); null if none */
+  public Product findByName(String name) {
+    String key = nameKey(name);
+    if (key == null) return null;
+    List<Product> matches = byName.get(key);
+    if (matches == null) return null;
+    for (Product p : matches) {
+      // skipping entries renamed behind the index's back
+      if (key.equals(nameKey(p.getName()))) return p;
+    }
+    return null;
+  }
+
+  /** Resolving typed input as a product id ("P7", any case) first, then as a name; null if neither */
+  public Product findByIdOrName(String input) {
+    int number = Ids.parseProduct(input);
+    Product p = (number > 0) ? findByNumber(number) : null;
+    return (p != null) ? p : findByName(input);
+  }
+
+  /** Renaming a product while keeping the name index consistent */
+  public synchronized void rename(Product product, String newName) {
+    unindexName(product);
+    product.setName(newName);
+    indexName(product);
+  }
+
+  private void indexName(Product product) {
+    String key = nameKey(product.getName());
+    if (key != null) byName.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(product);
+  }
+
+  private void unindexName(Product product) {
+    String key = nameKey(product.getName());
+    if (key == null) return;
+    List<Product> matches = byName.get(key);
+    if (matches == null) return;
+    matches.remove(product);
+    if (matches.isEmpty()) byName.remove(key);
+  }
+
+  private static String nameKey(String name) {
+    return (name == null) ? null : name.trim().toLowerCase(Locale.ROOT);
   }
 }
@@ -0,0 +1,176 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Aggregate reports over a warehouse. A parallel instance splits the client and
+ * product lists (Warehouse.clientSpliterator/productSpliterator) across a
+ * ForkJoinPool; a serial one walks the same spliterators on the calling thread
+ * and is the reference. Money is summed exactly (long cents) and ties are broken
+ * by client or product number, so both give identical results however the work
+ * is split.
+ */
+public class Reports {
+  // largest balance first, ties by client number; compares balances read once, since
+  // live ones may move while a heap or sort holds the client
+  private static final Comparator<Debtor> DEBTOR_ORDER =
+      Comparator.comparingLong((Debtor d) -> d.balanceCents).reversed()
+          .thenComparingInt(d -> d.client.getNumber());
+
+  private final Warehouse warehouse;
+  private final ForkJoinPool pool; // null => serial
+
+  private Reports(Warehouse warehouse, ForkJoinPool pool) {
+    if (warehouse == null) throw new IllegalArgumentException("warehouse must not be null");
+    this.warehouse = warehouse;
+    this.pool = pool;
+  }
+
+  // computing everything on the calling thread
+  public static Reports serial(Warehouse warehouse) { return new Reports(warehouse, null); }
+
+  // computing on the common fork/join pool
+  public static Reports parallel(Warehouse warehouse) { return parallel(warehouse, ForkJoinPool.commonPool()); }
+
+  // computing on pool (e.g. one sized to the cores reports may use)
+  public static Reports parallel(Warehouse warehouse, ForkJoinPool pool) {
+    if (pool == null) throw new IllegalArgumentException("pool must not be null");
+    return new Reports(warehouse, pool);
+  }
+
+  // totals of what clients owe (positive balances) and are owed (negative ones)
+  public static final class BalanceTotals {
+    private final long owedCents;
+    private final long creditCents;
+    private final int debtors;
+    private final int creditors;
+
+    BalanceTotals(long owedCents, long creditCents, int debtors, int creditors) {
+      this.owedCents = owedCents; this.creditCents = creditCents; this.debtors = debtors; this.creditors = creditors;
+    }
+
+    public long getOwedCents() { return owedCents; }
+    public long getCreditCents() { return creditCents; }
+    public int getDebtors() { return debtors; }
+    public int getCreditors() { return creditors; }
+
+    @Override public String toString() {
+      return "owed $" + Money.format(owedCents) + " by " + debtors + " clients, credit $"
+          + Money.format(-creditCents) + " to " + creditors + " clients";
+    }
+  }
+
+  public BalanceTotals outstandingBalances() {
+    return run(() -> {
+      Map<Boolean, long[]> split = clients()
+          .filter(c -> c.getBalanceCents() != 0)
+          .collect(Collectors.partitioningBy(c -> c.getBalanceCents() > 0, sumAndCount(Client::getBalanceCents)));
+      long[] owed = split.get(true);
+      long[] credit = split.get(false);
+      return new BalanceTotals(owed[0], credit[0], (int) owed[1], (int) credit[1]);
+    });
+  }
+
+  // the n clients owing the most, largest first
+  public List<Client> topDebtors(int n) {
+    if (n < 0) throw new IllegalArgumentException("n must be >= 0");
+    if (n == 0) return Collections.emptyList();
+    List<Debtor> top = run(() -> clients()
+        .map(c -> new Debtor(c, c.getBalanceCents()))
+        .filter(d -> d.balanceCents > 0)
+        .collect(largest(n, DEBTOR_ORDER)));
+    List<Client> out = new ArrayList<>(top.size());
+    for (Debtor d : top) out.add(d.client);
+    return out;
+  }
+
+  // a client with its balance as read when the report reached it
+  private static final class Debtor {
+    final Client client;
+    final long balanceCents;
+
+    Debtor(Client client, long balanceCents) {
+      this.client = client;
+      this.balanceCents = balanceCents;
+    }
+  }
+
+  // value of all available stock at current prices, in cents
+  public long stockValuationCents() {
+    return run(() -> products().mapToLong(p -> Money.times(p.getPriceCents(), p.getStockQuantity()))
+        .reduce(Money.ZERO, Money::plus));
+  }
+
+  // units waitlisted per product (products with a waitlist only), by product number
+  public Map<Integer, Integer> waitlistedDemand() {
+    return run(() -> products()
+        .map(p -> new AbstractMap.SimpleImmutableEntry<>(p.getNumber(), warehouse.getWaitingUnits(p.getNumber())))
+        .filter(e -> e.getValue() > 0)
+        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, Integer::sum, TreeMap::new)));
+  }
+
+  // billed revenue in cents per product over every client's invoice history, by product number;
+  // read from the columnar archive, its chunks split across the pool like the list scans
+  public Map<Integer, Long> revenueByProduct() {
+    return run(() -> warehouse.invoiceArchive().query().revenueByProduct(pool != null));
+  }
+
+  private Stream<Client> clients() { return StreamSupport.stream(warehouse.clientSpliterator(), pool != null); }
+
+  private Stream<Product> products() { return StreamSupport.stream(warehouse.productSpliterator(), pool != null); }
+
+  // running job in pool so its parallel streams split there, not on the common pool
+  private <T> T run(Supplier<T> job) {
+    return (pool == null) ? job.get() : pool.submit(job::get).join();
+  }
+
+  // {sum of amount, count}; overflow fails instead of wrapping
+  private static <T> Collector<T, long[], long[]> sumAndCount(ToLongFunction<T> amount) {
+    return Collector.of(
+        () -> new long[2],
+        (acc, t) -> {
+          acc[0] = Money.plus(acc[0], amount.applyAsLong(t));
+          acc[1]++;
+        },
+        (a, b) -> {
+          a[0] = Money.plus(a[0], b[0]);
+          a[1] += b[1];
+          return a;
+        });
+  }
+
+  // keeping the n first elements under order in a bounded heap per split
+  private static <T> Collector<T, PriorityQueue<T>, List<T>> largest(int n, Comparator<T> order) {
+    Comparator<T> worstFirst = order.reversed();
+    return Collector.of(
+        () -> new PriorityQueue<>(n + 1, worstFirst),
+        (heap, t) -> {
+          heap.add(t);
+          if (heap.size() > n) heap.poll();
+        },
+        (a, b) -> {
+          for (T t : b) {
+            a.add(t);
+            if (a.size() > n) a.poll();
+          }
+          return a;
+        },
+        heap -> {
+          List<T> out = new ArrayList<>(heap);
+          out.sort(order);
+          return out;
+        });
+  }
+}
@@ -1,13 +1,13 @@
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
 
 public class UserInterface {
   private static UserInterface ui;
-  private final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+  // buffered output, flushed once per menu iteration (and by every read)
+  private final Console out = Console.stdout();
+  private final BufferedReader reader = new BufferedReader(new InputStreamReader(out.input(System.in)));
   private final Warehouse wh = Warehouse.instance();
 
   // Menu
@@ -35,8 +35,13 @@ public class UserInterface {
 
   // Low-level prompting helpers
   private String prompt(String s) {
+    out.print(s + ": ");
+    return readLine();
+  }
+
+  // next input line, null at end of input
+  private String readLine() {
     try {
-      System.out.print(s + ": ");
       return reader.readLine();
     } catch (IOException e) { throw new RuntimeException(e); }
   }
@@ -53,22 +58,22 @@ public class UserInterface {
       try {
         return Integer.parseInt(input);
       } catch (NumberFormatException e) {
-        System.out.println(" Error: Invalid input. Please enter a whole number or 'q' to quit.");
+        out.println(" Error: Invalid input. Please enter a whole number or 'q' to quit.");
       }
     }
   }
 
-  /** Money/price or general double: returns null if 'q' or EOF */
-  private Double doublePrompt(String s) {
+  /** Money/price in cents: returns null if 'q' or EOF */
+  private Long moneyPrompt(String s) {
     while (true) {
       String input = prompt(s + " (or 'q' to quit)");
       if (input == null) return null;
       input = input.trim();
       if (input.equalsIgnoreCase("q")) return null;
       try {
-        return Double.parseDouble(input);
-      } catch (NumberFormatException e) {
-        System.out.println("Error: Invalid input. Please enter a number like 12 or 12.5, or 'q' to quit.");
+        return Money.parse(input);
+      } catch (IllegalArgumentException e) {
+        out.println("Error: Invalid input. Please enter an amount like 12 or 12.50, or 'q' to quit.");
       }
     }
   }
@@ -81,58 +86,32 @@ public class UserInterface {
       in = in.trim();
       if (in.equalsIgnoreCase("q")) return null;
       if (!in.isEmpty()) return in;
-      System.out.println("Error: Please enter a non-empty value or 'q' to quit.");
+      out.println("Error: Please enter a non-empty value or 'q' to quit.");
     }
   }
 
   // id/Name resolution (accept names or ids)
-  private static final Pattern CLIENT_ID_PATTERN = Pattern.compile("(?i)^C\\d+$");
-  private static final Pattern PRODUCT_ID_PATTERN = Pattern.compile("(?i)^P\\d+$");
 
-  /** Resolving client input to an actual client id (accepts id or name, case-insensitive). Returns null if not found. */
-  private String resolveClientId(String raw) {
-    if (raw == null) return null;
+  /** Resolving client input to a client number (accepts id or name, case-insensitive). Returns 0 if not found. */
+  private int resolveClient(String raw) {
+    if (raw == null) return 0;
     String s = raw.trim();
-    if (s.isEmpty()) return null;
-
-    // If it looks like an ID, normalizing case and check
-    if (CLIENT_ID_PATTERN.matcher(s).matches()) {
-      String id = "C" + s.replaceAll("(?i)^C", "");
-      Client c = wh.findClient(id);
-      if (c != null) return c.getId();
-      return null;
-    }
+    if (s.isEmpty()) return 0;
 
-    // Otherwise, try by name (it is case-insensitive exact match)
-    Iterator<Client> it = wh.getClients();
-    while (it.hasNext()) {
-      Client c = it.next();
-      if (c.getName().equalsIgnoreCase(s)) return c.getId();
-    }
-    return null;
+    // An ID (C#, any case) first, otherwise a case-insensitive exact name
+    Client c = wh.findClientByIdOrName(s);
+    return (c != null) ? c.getNumber() : 0;
   }
 
-  /** Resolving product input to product ID (accepts ID or name, case-insensitive). Returns null if not found. */
-  private String resolveProductId(String raw) {
-    if (raw == null) return null;
+  /** Resolving product input to a product number (accepts ID or name, case-insensitive). Returns 0 if not found. */
+  private int resolveProduct(String raw) {
+    if (raw == null) return 0;
     String s = raw.trim();
-    if (s.isEmpty()) return null;
-
-    // If it looks like an ID (P#), normalize to uppercase P
-    if (PRODUCT_ID_PATTERN.matcher(s).matches()) {
-      String id = "P" + s.replaceAll("(?i)^P", "");
-      Product p = wh.findProduct(id);
-      if (p != null) return p.getId();
-      return null;
-    }
+    if (s.isEmpty()) return 0;
 
-    // Otherwise, try by name
-    Iterator<Product> it = wh.getProducts();
-    while (it.hasNext()) {
-      Product p = it.next();
-      if (p.getName().equalsIgnoreCase(s)) return p.getId();
-    }
-    return null;
+    // An ID (P#, any case) first, otherwise a case-insensitive exact name (indexed, no scan)
+    Product p = wh.findProductByIdOrName(s);
+    return (p != null) ? p.getNumber() : 0;
   }
 
   // Menu actions 
@@ -142,46 +121,44 @@ public class UserInterface {
     String addr = stringPrompt("Client address");
     if (addr == null) return;
     Client c = wh.addClient(name, addr);
-    System.out.println("Added " + c);
+    out.println("Added " + c);
   }
 
   private void showClients() {
-    Iterator<Client> it = wh.getClients();
-    System.out.println("=== Clients ===");
-    while (it.hasNext()) System.out.println(it.next());
+    out.println("=== Clients ===");
+    PagedListing.show(this::readLine, out, wh::getClients, Client::toString);
   }
 
   private void addProduct() {
     String name = stringPrompt("Product name");
     if (name == null) return;
-    Double price = doublePrompt("Unit price");
+    Long price = moneyPrompt("Unit price");
     if (price == null) return;
     Integer qty = intPrompt("Starting quantity");
     if (qty == null) return;
     Product p = wh.addProduct(name, price, qty);
-    System.out.println("Added " + p);
+    out.println("Added " + p);
   }
 
   private void showProducts() {
-    Iterator<Product> it = wh.getProducts();
-    System.out.println("=== Products ===");
-    while (it.hasNext()) System.out.println(it.next());
+    out.println("=== Products ===");
+    PagedListing.show(this::readLine, out, wh::getProducts, Product::toString);
   }
 
   private void addToWishlist() {
     String cidRaw = stringPrompt("Client (ID like C1 or name like 'Sam')");
     if (cidRaw == null) return;
-    String cid = resolveClientId(cidRaw);
-    if (cid == null) {
-      System.out.println("error: Client not found. Please enter a valid client ID (e.g., C1) or exact name.");
+    int cid = resolveClient(cidRaw);
+    if (cid == 0) {
+      out.println("error: Client not found. Please enter a valid client ID (e.g., C1) or exact name.");
       return;
     }
 
     String pidRaw = stringPrompt("Product (ID like P1 or name like 'p1')");
     if (pidRaw == null) return;
-    String pid = resolveProductId(pidRaw);
-    if (pid == null) {
-      System.out.println("error:  Product not found. Please enter a valid product ID (e.g., P1) or exact name.");
+    int pid = resolveProduct(pidRaw);
+    if (pid == 0) {
+      out.println("error:  Product not found. Please enter a valid product ID (e.g., P1) or exact name.");
       return;
     }
 
@@ -190,61 +167,63 @@ public class UserInterface {
 
     try {
       wh.addToWishlist(cid, pid, qty);
-      System.out.println("Added to wishlist.");
+      out.println("Added to wishlist.");
     } catch (Exception e) {
-      System.out.println("error: " + e.getMessage());
+      out.println("error: " + e.getMessage());
     }
   }
 
   private void showWishlist() {
     String cidRaw = stringPrompt("Client (ID like C1 or name)");
     if (cidRaw == null) return;
-    String cid = resolveClientId(cidRaw);
-    if (cid == null) {
-      System.out.println("error:  Client not found.");
+    int cid = resolveClient(cidRaw);
+    if (cid == 0) {
+      out.println("error:  Client not found.");
       return;
     }
-    List<WishlistItem> items = wh.getWishlist(cid);
-    System.out.println("=== Wishlist for " + cid + " ===");
-    for (WishlistItem wi : items) System.out.println("  " + wi);
+    out.println("=== Wishlist for " + Ids.client(cid) + " ===");
+    wh.forEachWishlistItem(cid, (number, qty) -> {
+      Product p = wh.findProduct(number);
+      out.println("  WishlistItem{" + (p != null ? p.getName() : "?") + " " + Ids.product(number) + " x " + qty + "}");
+    });
   }
 
   private void placeOrder() {
     String cidRaw = stringPrompt("Client (ID like C1 or name)");
     if (cidRaw == null) return;
-    String cid = resolveClientId(cidRaw);
-    if (cid == null) {
-      System.out.println("error:  Client not found.");
+    int cid = resolveClient(cidRaw);
+    if (cid == 0) {
+      out.println("error:  Client not found.");
       return;
     }
     Invoice inv = wh.placeOrderFromWishlist(cid);
     if (inv != null) {
-      System.out.println("Order fulfilled now; invoice created:");
-      System.out.println(inv);
+      out.println("Order fulfilled now; invoice created:");
+      out.println(inv);
     } else {
-      System.out.println("Nothing fulfilled immediately (all went to waitlist or wishlist was empty).");
+      out.println("Nothing fulfilled immediately (all went to waitlist or wishlist was empty).");
     }
   }
 
   private void showProductWaitlist() {
     String pidRaw = stringPrompt("Product (ID like P1 or name)");
     if (pidRaw == null) return;
-    String pid = resolveProductId(pidRaw);
-    if (pid == null) {
-      System.out.println("error: Product not found.");
+    int pid = resolveProduct(pidRaw);
+    if (pid == 0) {
+      out.println("error: Product not found.");
       return;
     }
     List<WaitlistItem> q = wh.getProductWaitlist(pid);
-    System.out.println("=== Waitlist for " + pid + " ===");
-    for (WaitlistItem wi : q) System.out.println("  " + wi);
+    out.println("=== Waitlist for " + Ids.product(pid) + " ===");
+    for (WaitlistItem wi : q) out.println("  " + wi);
   }
 
   private void receiveShipment() {
     String pidRaw = stringPrompt("Product (ID like P1 or name)");
     if (pidRaw == null) return;
-    String pid = resolveProductId(pidRaw);
-    if (pid == null) {
-      System.out.println("error:  Product not found.");
+    int pid = resolveProduct(pidRaw);
+    if (pid == 0) {
+      out.println("error:  Product not found.");
       return;
     }
     Integer qty = intPrompt("Shipment quantity");
@@ -252,93 +231,101 @@ public class UserInterface {
 
     try {
       wh.receiveShipment(pid, qty);
-      System.out.println("Shipment processed.");
+      out.println("Shipment processed.");
     } catch (Exception e) {
-      System.out.println("error: " + e.getMessage());
+      out.println("error: " + e.getMessage());
     }
   }
 
   private void recordPayment() {
     String cidRaw = stringPrompt("Client (ID like C1 or name)");
     if (cidRaw == null) return;
-    String cid = resolveClientId(cidRaw);
-    if (cid == null) {
-      System.out.println("error:  Client not found.");
+    int cid = resolveClient(cidRaw);
+    if (cid == 0) {
+      out.println("error:  Client not found.");
       return;
     }
-    Double amt = doublePrompt("Payment amount");
+    Long amt = moneyPrompt("Payment amount");
     if (amt == null) return;
 
     try {
       wh.recordPayment(cid, amt);
-      System.out.println("Payment recorded.");
+      out.println("Payment recorded.");
     } catch (Exception e) {
-      System.out.println(" error: " + e.getMessage());
+      out.println(" error: " + e.getMessage());
     }
   }
 
   private void showInvoices() {
     String cidRaw = stringPrompt("Client (ID like C1 or name)");
     if (cidRaw == null) return;
-    String cid = resolveClientId(cidRaw);
-    if (cid == null) {
-      System.out.println("Error: Client not found.");
+    int cid = resolveClient(cidRaw);
+    if (cid == 0) {
+      out.println("Error: Client not found.");
       return;
     }
     Client c = wh.findClient(cid);
-    if (c == null) { System.out.println("Client not found"); return; }
-    System.out.println("=== Invoices for " + cid + " ===");
+    if (c == null) { out.println("Client not found"); return; }
+    out.println("=== Invoices for " + Ids.client(cid) + " ===");
     for (Invoice inv : c.getInvoices()) {
-      System.out.println(inv);
-      System.out.println();
+      out.println(inv);
+      out.println();
     }
   }
 
   private void showClientWaitlist() {
   String cidRaw = stringPrompt("Client (ID like C1 or name)");
   if (cidRaw == null) return;
-  String cid = resolveClientId(cidRaw);
-  if (cid == null) {
-    System.out.println("Error: Client not found.");
+  int cid = resolveClient(cidRaw);
+  if (cid == 0) {
+    out.println("Error: Client not found.");
     return;
   }
 
   List<WaitlistItem> items = wh.getClientWaitlist(cid);
-  System.out.println("=== Waitlist items for " + cid + " ===");
+  out.println("=== Waitlist items for " + Ids.client(cid) + " ===");
   if (items.isEmpty()) {
-    System.out.println("No pending waitlist items.");
+    out.println("No pending waitlist items.");
   } else {
-    for (WaitlistItem wi : items) System.out.println("  " + wi);
+    for (WaitlistItem wi : items) out.println("  " + wi);
   }
 }
 
 
   private void help() {
-    System.out.println("\n--- MENU ---");
-    System.out.println(ADD_CLIENT + ". Add client");
-    System.out.println(SHOW_CLIENTS + ". Show clients");
-    System.out.println(ADD_PRODUCT + ". Add product");
-    System.out.println(SHOW_PRODUCTS + ". Show products");
-    System.out.println(ADD_TO_WISHLIST + ". Add to wishlist");
-    System.out.println(SHOW_WISHLIST + ". Show a client's wishlist");
-    System.out.println(PLACE_ORDER + ". Place order from wishlist");
-    System.out.println(SHOW_PRODUCT_WAITLIST + ". Show waitlist for product");
-    System.out.println(RECEIVE_SHIPMENT + ". Receive shipment for product");
-    System.out.println(RECORD_PAYMENT + ". Record payment for client");
-    System.out.println(SHOW_INVOICES + ". Show invoices for client");
-    System.out.println(SHOW_CLIENT_WAITLIST + ". Show waitlist for client");
-
-    System.out.println(EXIT + ". Exit\n");
+    out.println("\n--- MENU ---");
+    out.println(ADD_CLIENT + ". Add client");
+    out.println(SHOW_CLIENTS + ". Show clients");
+    out.println(ADD_PRODUCT + ". Add product");
+    out.println(SHOW_PRODUCTS + ". Show products");
+    out.println(ADD_TO_WISHLIST + ". Add to wishlist");
+    out.println(SHOW_WISHLIST + ". Show a client's wishlist");
+    out.println(PLACE_ORDER + ". Place order from wishlist");
+    out.println(SHOW_PRODUCT_WAITLIST + ". Show waitlist for product");
+    out.println(RECEIVE_SHIPMENT + ". Receive shipment for product");
+    out.println(RECORD_PAYMENT + ". Record payment for client");
+    out.println(SHOW_INVOICES + ". Show invoices for client");
+    out.println(SHOW_CLIENT_WAITLIST + ". Show waitlist for client");
+
+    out.println(EXIT + ". Exit\n");
   }
 
   // Main menu loop (robust, accepts 'q' to quit)
   public void process() {
     help(); // displaying initial menu
 
+    try {
+      loop();
+    } finally {
+      out.flush();
+    }
+  }
+
+  private void loop() {
     while (true) {
       Integer cmd = intPrompt("Enter choice (help shows menu; 0 or 'q' to exit)");
       if (cmd == null) { // user typed 'q' or Ctrl+D
-        System.out.println("Exiting...");
+        out.println("Exiting...");
         return;
       }
 
@@ -346,7 +333,7 @@ public class UserInterface {
 
       switch (cmd) {
         case EXIT:
-          System.out.println("Exiting...");
+          out.println("Exiting...");
           return;
 
         case ADD_CLIENT:
@@ -398,8 +385,9 @@ public class UserInterface {
 
 
         default:
-          System.out.println(" nknown option. Type 99 for menu or 'q' to quit.");
+          out.println(" nknown option. Type 99 for menu or 'q' to quit.");
       }
+      out.flush();
     }
   }
 
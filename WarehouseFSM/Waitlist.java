@@ -1,54 +1,245 @@
 import java.io.Serializable;
+import java.util.AbstractMap;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-// storing per-product FIFO queues
+// storing per-product FIFO queues; callers must serialize access per product
+// (Warehouse holds the product's lock stripe). Queues and per-client lists sit
+// in arrays indexed by product and client number: slots are filled and emptied
+// under this object's monitor and read without locking. A queue or client list
+// is dropped from its slot as soon as it drains, so only waiters take memory
 public class Waitlist implements Serializable {
-  private static final long serialVersionUID = 1L;
+  private static final long serialVersionUID = 2L;
 
-  private final Map<String, Deque<WaitlistItem>> byProduct = new HashMap<>();
+  // byProduct.get(n) is product n's queue (null until first waitlisted); replaced when grown
+  private volatile AtomicReferenceArray<Deque<WaitlistItem>> byProduct = new AtomicReferenceArray<>(16);
+  // reverse index: byClient.get(n) is client n's items in request order;
+  // copy-on-write since one client's items span many products
+  private volatile AtomicReferenceArray<List<WaitlistItem>> byClient = new AtomicReferenceArray<>(16);
+  // products whose queue is not empty (exactly the filled byProduct slots)
+  private final AtomicInteger waitingProducts = new AtomicInteger();
 
   // adding new waitlist item for product and client
-  public String add(String productId, int qty, String clientId) {
-    byProduct.computeIfAbsent(productId, k -> new ArrayDeque<>())
-             .addLast(new WaitlistItem(productId, clientId, qty));
-    return productId + "#" + byProduct.get(productId).size();
+  public String add(int productNumber, int qty, int clientNumber) {
+    enqueue(productNumber, qty, clientNumber);
+    return Ids.product(productNumber) + "#" + countForProduct(productNumber);
   }
 
-  // getting queue for specific product
-  public Deque<WaitlistItem> queueFor(String productId) {
-    return byProduct.computeIfAbsent(productId, k -> new ArrayDeque<>());
+  // adding new waitlist item and returning it
+  public WaitlistItem enqueue(int productNumber, int qty, int clientNumber) {
+    WaitlistItem wi = new WaitlistItem(productNumber, clientNumber, qty);
+    restore(wi);
+    return wi;
+  }
+
+  // appending an existing (e.g. loaded) item to the back of its product queue
+  void restore(WaitlistItem wi) {
+    writableQueue(wi.getProductNumber()).addLast(wi);
+    indexClient(wi);
+  }
+
+  // replacing a product's whole queue with saved items (applying a checkpoint delta)
+  void replaceQueue(int productNumber, List<WaitlistItem> items) {
+    Deque<WaitlistItem> q = queue(productNumber);
+    if (q != null) {
+      for (WaitlistItem wi : q) unindexClient(wi);
+      q.clear();
+      dropQueue(productNumber, q);
+    }
+    for (WaitlistItem wi : items) restore(wi);
+  }
+
+  // getting read-only view of queue for specific product (never allocates)
+  public Collection<WaitlistItem> queueFor(int productNumber) {
+    Deque<WaitlistItem> q = queue(productNumber);
+    return (q == null) ? Collections.emptyList() : Collections.unmodifiableCollection(q);
+  }
+
+  // peeking at head of product queue without removing (null if empty)
+  public WaitlistItem peekFirst(int productNumber) {
+    Deque<WaitlistItem> q = queue(productNumber);
+    return (q == null) ? null : q.peekFirst();
+  }
+
+  // removing and returning head of product queue (null if empty)
+  public WaitlistItem removeFirst(int productNumber) {
+    Deque<WaitlistItem> q = queue(productNumber);
+    if (q == null) return null;
+    WaitlistItem head = q.pollFirst();
+    if (head != null) {
+      if (q.isEmpty()) dropQueue(productNumber, q);
+      unindexClient(head);
+    }
+    return head;
+  }
+
+  // removing specific waitlist item from both indexes
+  public boolean remove(WaitlistItem wi) {
+    Deque<WaitlistItem> q = queue(wi.getProductNumber());
+    if (q == null || !q.remove(wi)) return false;
+    if (q.isEmpty()) dropQueue(wi.getProductNumber(), q);
+    unindexClient(wi);
+    return true;
+  }
+
+  // filling qty units of a waitlist item: removing it when fully filled, shrinking it otherwise
+  public void fill(WaitlistItem wi, int qty) {
+    if (qty >= wi.getQty()) remove(wi);
+    else wi.reduceQty(qty);
   }
 
   // counting total waitlist items for product
-  public int countForProduct(String productId) {
-    return queueFor(productId).size();
+  public int countForProduct(int productNumber) {
+    Deque<WaitlistItem> q = queue(productNumber);
+    return (q == null) ? 0 : q.size();
   }
 
-  // getting iterator for all product queues
-  public Iterator<Map.Entry<String, Deque<WaitlistItem>>> entries() {
-    return byProduct.entrySet().iterator();
+  // summing the units waiting for product, without copying the queue (caller holds its stripe)
+  public int unitsForProduct(int productNumber) {
+    Deque<WaitlistItem> q = queue(productNumber);
+    if (q == null) return 0;
+    int units = 0;
+    for (WaitlistItem wi : q) units += wi.getQty();
+    return units;
+  }
+
+  // counting products that currently have a non-empty queue
+  public int productCount() { return waitingProducts.get(); }
+
+  // getting iterator for all non-empty product queues (read-only views), by product number
+  public Iterator<Map.Entry<Integer, Collection<WaitlistItem>>> entries() {
+    AtomicReferenceArray<Deque<WaitlistItem>> arr = byProduct;
+    return new Iterator<Map.Entry<Integer, Collection<WaitlistItem>>>() {
+      private int next = advance(1);
+
+      private int advance(int from) {
+        while (from < arr.length() && isEmpty(arr.get(from))) from++;
+        return from;
+      }
+
+      public boolean hasNext() { return next < arr.length(); }
+
+      public Map.Entry<Integer, Collection<WaitlistItem>> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Map.Entry<Integer, Collection<WaitlistItem>> e = new AbstractMap.SimpleImmutableEntry<>(next,
+            Collections.unmodifiableCollection(arr.get(next)));
+        next = advance(next + 1);
+        return e;
+      }
+    };
   }
 
   // getting all waitlist items for a specific client
-  public List<WaitlistItem> getClientWaitlist(String clientId) {
-    List<WaitlistItem> results = new ArrayList<>();
-    for (Deque<WaitlistItem> queue : byProduct.values()) {
-      for (WaitlistItem wi : queue) {
-        if (wi.getClientId().equalsIgnoreCase(clientId)) {
-          results.add(wi);
+  public List<WaitlistItem> getClientWaitlist(int clientNumber) {
+    AtomicReferenceArray<List<WaitlistItem>> arr = byClient;
+    List<WaitlistItem> items = (clientNumber > 0 && clientNumber < arr.length()) ? arr.get(clientNumber) : null;
+    return (items == null) ? new ArrayList<>() : new ArrayList<>(items);
+  }
+
+  private Deque<WaitlistItem> queue(int productNumber) {
+    AtomicReferenceArray<Deque<WaitlistItem>> arr = byProduct;
+    return (productNumber > 0 && productNumber < arr.length()) ? arr.get(productNumber) : null;
+  }
+
+  // getting or creating the queue for a product; only used on write paths
+  private Deque<WaitlistItem> writableQueue(int productNumber) {
+    Deque<WaitlistItem> q = queue(productNumber);
+    return (q != null) ? q : createQueue(productNumber);
+  }
+
+  private synchronized Deque<WaitlistItem> createQueue(int productNumber) {
+    if (productNumber <= 0) throw new IllegalArgumentException("Bad product number " + productNumber);
+    byProduct = slotFor(byProduct, productNumber);
+    Deque<WaitlistItem> q = byProduct.get(productNumber);
+    if (q == null) {
+      byProduct.set(productNumber, q = new ArrayDeque<>());
+      waitingProducts.incrementAndGet();
+    }
+    return q;
+  }
+
+  // emptying the slot of a drained queue (the product's stripe keeps it from refilling meanwhile)
+  private synchronized void dropQueue(int productNumber, Deque<WaitlistItem> q) {
+    if (q.isEmpty() && byProduct.get(productNumber) == q) {
+      byProduct.set(productNumber, null);
+      waitingProducts.decrementAndGet();
+    }
+  }
+
+  private List<WaitlistItem> clientItems(int clientNumber) {
+    AtomicReferenceArray<List<WaitlistItem>> arr = byClient;
+    return (clientNumber > 0 && clientNumber < arr.length()) ? arr.get(clientNumber) : null;
+  }
+
+  // adding to the client's list; one client's items span product stripes, so the
+  // list's own monitor orders this against dropping the list once it empties
+  private void indexClient(WaitlistItem wi) {
+    int n = wi.getClientNumber();
+    while (true) {
+      List<WaitlistItem> items = clientItems(n);
+      if (items == null) items = createClientItems(n);
+      synchronized (items) {
+        if (clientItems(n) == items) {
+          items.add(wi);
+          return;
         }
       }
+      // dropped while we got here; retrying with a fresh list
     }
-    return results;
   }
 
+  private synchronized List<WaitlistItem> createClientItems(int clientNumber) {
+    if (clientNumber <= 0) throw new IllegalArgumentException("Bad client number " + clientNumber);
+    byClient = slotFor(byClient, clientNumber);
+    List<WaitlistItem> items = byClient.get(clientNumber);
+    if (items == null) byClient.set(clientNumber, items = new CopyOnWriteArrayList<>());
+    return items;
+  }
+
+  // arr, or a copy grown to hold index n
+  private static <T> AtomicReferenceArray<T> slotFor(AtomicReferenceArray<T> arr, int n) {
+    if (n < arr.length()) return arr;
+    AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(Math.max(n + 1, arr.length() * 2));
+    for (int i = 0; i < arr.length(); i++) grown.set(i, arr.get(i));
+    return grown;
+  }
+
+  private void unindexClient(WaitlistItem wi) {
+    int n = wi.getClientNumber();
+    List<WaitlistItem> items = clientItems(n);
+    if (items == null) return;
+    synchronized (items) {
+      // WaitlistItem keeps identity equality, so equal-looking items are not confused
+      items.remove(wi);
+      if (items.isEmpty()) dropClientItems(n, items);
+    }
+  }
+
+  private synchronized void dropClientItems(int clientNumber, List<WaitlistItem> items) {
+    if (byClient.get(clientNumber) == items) byClient.set(clientNumber, null);
+  }
+
+  private static boolean isEmpty(Deque<WaitlistItem> q) { return q == null || q.isEmpty(); }
+
   // returning string representation of all waitlists
   @Override
-  public String toString() { return byProduct.toString(); }
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (Iterator<Map.Entry<Integer, Collection<WaitlistItem>>> it = entries(); it.hasNext(); ) {
+      Map.Entry<Integer, Collection<WaitlistItem>> e = it.next();
+      sb.append(Ids.product(e.getKey())).append('=').append(e.getValue());
+      if (it.hasNext()) sb.append(", ");
+    }
+    return sb.append('}').toString();
+  }
 }
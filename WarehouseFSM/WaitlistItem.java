@@ -3,27 +3,39 @@ import java.util.Date;
 import java.util.UUID;
 
 public class WaitlistItem implements Serializable {
-  private static final long serialVersionUID = 1L;
+  private static final long serialVersionUID = 2L;
 
-  private final String itemId = UUID.randomUUID().toString();
-  private final String productId;
-  private final String clientId;
-  private final int qty;
-  private final Date requestedAt = new Date();
+  private final String itemId;
+  private final int productNumber;
+  private final int clientNumber;
+  private int qty;
+  private final Date requestedAt;
 
-  public WaitlistItem(String productId, String clientId, int qty) {
+  public WaitlistItem(int productNumber, int clientNumber, int qty) {
+    this(UUID.randomUUID().toString(), productNumber, clientNumber, qty, new Date());
+  }
+
+  // rebuilding a saved waitlist item
+  WaitlistItem(String itemId, int productNumber, int clientNumber, int qty, Date requestedAt) {
     if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
-    this.productId = productId; this.clientId = clientId; this.qty = qty;
+    this.itemId = itemId; this.productNumber = productNumber; this.clientNumber = clientNumber;
+    this.qty = qty; this.requestedAt = requestedAt;
   }
 
   public String getItemId() { return itemId; }
-  public String getProductId() { return productId; }
-  public String getClientId() { return clientId; }
+  public int getProductNumber() { return productNumber; }
+  public int getClientNumber() { return clientNumber; }
   public int getQty() { return qty; }
   public Date getRequestedAt() { return requestedAt; }
 
+  // reducing outstanding qty after a partial fill
+  void reduceQty(int filled) {
+    if (filled <= 0 || filled >= qty) throw new IllegalArgumentException("partial fill must be in 1.." + (qty - 1));
+    qty -= filled;
+  }
+
   @Override public String toString() {
-    return "WaitlistItem{id=" + itemId + ", productId=" + productId +
-           ", clientId=" + clientId + ", qty=" + qty + ", at=" + requestedAt + "}";
+    return "WaitlistItem{id=" + itemId + ", productId=" + Ids.product(productNumber) +
+           ", clientId=" + Ids.client(clientNumber) + ", qty=" + qty + ", at=" + requestedAt + "}";
   }
 }
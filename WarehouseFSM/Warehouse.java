@@ -1,163 +1,1064 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+// thread-safe: stock, waitlist queues and allocation policy of a product are
+// guarded by its product stripe, wishlist/balance/invoices of a client by its
+// client stripe. Product stripes are always taken in ascending order, and a
+// client stripe is only ever taken after them (taking the wishlist for an order,
+// billing, inside the section that took the stock) or alone, never the other way round, so concurrent
+// calls cannot deadlock. Journal records are appended under the stripes and
+// waited on for durability only after they are released.
 
 public class Warehouse implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  private static Warehouse warehouse;
+  private static final int LOCK_STRIPES = 256;
+  // most numbers a thread takes off an IdAllocator at once
+  private static final int ID_BLOCK = 64;
+
+  // operation log record types
+  private static final byte OP_ADD_CLIENT = 1;
+  private static final byte OP_ADD_PRODUCT = 2;
+  private static final byte OP_ADD_TO_WISHLIST = 3;
+  private static final byte OP_PLACE_ORDER = 4;
+  private static final byte OP_RECEIVE_SHIPMENT = 5;
+  private static final byte OP_RECORD_PAYMENT = 6;
+  private static final byte OP_RECEIVE_SHIPMENTS = 7;
+  private static final byte OP_SET_ALLOCATION_POLICY = 8;
+  private static final byte OP_RENAME_PRODUCT = 9;
+  private static final byte OP_SET_PRODUCT_PRICE = 10;
+  private static final byte OP_RESERVE = 11;
+  private static final byte OP_COMMIT_RESERVATION = 12;
+  private static final byte OP_RELEASE_RESERVATION = 13;
+
   private final ClientList clientList;
   private final ProductList productList;
   private final Waitlist waitlist = new Waitlist();
-  private int clientIdCounter = 1;
+  private final IdAllocator clientIds = new IdAllocator(ID_BLOCK);
+  private final IdAllocator productIds = new IdAllocator(ID_BLOCK);
+  private final LockStripes productLocks = new LockStripes(LOCK_STRIPES);
+  private final LockStripes clientLocks = new LockStripes(LOCK_STRIPES);
+  // journal of mutations since the last snapshot; null when not journaling
+  private transient volatile OperationLog log;
+  // what changed since the last snapshot or delta; null until tracking starts
+  private transient volatile Changes changes;
+  // sequence number of the last delta folded into this warehouse's state
+  private transient long checkpointSeq;
+  // sequence number of the last journal record whose effect is in this state
+  private transient long journalSeq;
+  // columnar copy of billed invoice lines for reports; bill() appends to it
+  private transient volatile InvoiceArchive archive = new InvoiceArchive();
+  // archive rows the loaded snapshot and deltas cover (see WarehouseCodec)
+  private transient int archivedRows;
 
-  // initializing lists
+  // initializing lists with the shared singletons
   private Warehouse() {
-    clientList = ClientList.instance();
-    productList = ProductList.instance();
+    this(ClientList.instance(), ProductList.instance());
   }
 
-  // creating singleton instance
-  public static Warehouse instance() {
-    if (warehouse == null) warehouse = new Warehouse();
-    return warehouse;
+  // creating an independent warehouse (e.g. one per tenant shard) over its own lists
+  public Warehouse(ClientList clientList, ProductList productList) {
+    if (clientList == null || productList == null) throw new IllegalArgumentException("lists must not be null");
+    this.clientList = clientList;
+    this.productList = productList;
+    // either list may already hold entries (a pre-filled catalog, a shared roster)
+    clientIds.advanceTo(clientList.maxNumber() + 1);
+    productIds.advanceTo(productList.maxNumber() + 1);
   }
 
+  // built on first use by the JVM's class-init lock; no locking on later calls
+  private static class Holder {
+    static final Warehouse INSTANCE = new Warehouse();
+  }
+
+  // getting singleton instance
+  public static Warehouse instance() { return Holder.INSTANCE; }
+
   // adding client to client list
   public Client addClient(String name, String address) {
-    Client c = new Client(name, address, clientIdCounter++);
-    clientList.insertClient(c);
+    int number = clientIds.next();
+    Client c = new Client(name, address, number);
+    long seq;
+    clientLocks.lock(c.getNumber());
+    try {
+      // only an insert that took hands out the number and reaches the journal
+      if (!clientList.insertClient(c)) throw new IllegalStateException("Client number taken: " + c.getId());
+      seq = journal(out -> {
+        out.writeByte(OP_ADD_CLIENT);
+        writeVarInt(out, number);
+        writeText(out, name);
+        writeText(out, address);
+      });
+      markClient(c.getNumber());
+    } finally {
+      clientLocks.unlock(c.getNumber());
+    }
+    awaitDurable(seq);
     return c;
   }
 
   // getting iterator of all clients
   public Iterator<Client> getClients() { return clientList.getClients(); }
 
-  // finding client by id
-  public Client findClient(String id) { return clientList.search(id); }
+  // getting one page of clients in the order they were added; token is null for
+  // the first page, then the previous page's next token
+  public Page<Client> getClients(String token, int size) {
+    return clientList.page(pageStart(token, 0), size);
+  }
+
+  // splitting all clients for parallel scans (see Reports)
+  public Spliterator<Client> clientSpliterator() { return clientList.spliterator(); }
+
+  // finding client by number ("C12" -> 12)
+  public Client findClient(int clientNumber) { return clientList.search(clientNumber); }
+
+  // finding client by name (case-insensitive)
+  public Client findClientByName(String name) { return clientList.findByName(name); }
+
+  // finding client by id ("C12", any case) or else by name (case-insensitive)
+  public Client findClientByIdOrName(String input) { return clientList.findByIdOrName(input); }
+
+  // getting the n clients owing the most, largest balance first
+  public List<Client> getTopDebtors(int n) { return clientList.balanceIndex().top(n); }
 
-  // recording payment from client
-  public void recordPayment(String clientId, double amount) {
-    Client c = findClient(clientId);
-    if (c == null) throw new IllegalArgumentException("Client not found: " + clientId);
-    c.recordPayment(amount);
+  // getting clients with balance greater than minCents, largest first
+  public List<Client> getClientsWithBalanceAbove(long minCents) {
+    return clientList.balanceIndex().withBalanceAbove(minCents);
+  }
+
+  // getting one page of clients with balance greater than minCents (after == null: first page)
+  public BalanceIndex.Page getClientsWithBalanceAbove(long minCents, BalanceIndex.Cursor after, int size) {
+    return clientList.balanceIndex().page(minCents, after, size);
+  }
+
+  // the same pages behind a string token (null for the first page), as getClients(token, size) pages
+  public Page<Client> getClientsWithBalanceAbove(long minCents, String token, int size) {
+    BalanceIndex.Page page = getClientsWithBalanceAbove(minCents, BalanceIndex.Cursor.fromToken(token), size);
+    BalanceIndex.Cursor next = page.getNext();
+    return new Page<>(page.getClients(), (next == null) ? null : next.toToken());
+  }
+
+  // recording payment of amountCents from client
+  public void recordPayment(int clientNumber, long amountCents) {
+    Client c = findClient(clientNumber);
+    if (c == null) throw new IllegalArgumentException("Client not found: " + Ids.client(clientNumber));
+    if (amountCents <= 0) throw new IllegalArgumentException("Payment must be positive");
+    long seq;
+    clientLocks.lock(c.getNumber());
+    try {
+      seq = journal(out -> {
+        out.writeByte(OP_RECORD_PAYMENT);
+        writeVarInt(out, c.getNumber());
+        out.writeLong(amountCents);
+      });
+      c.recordPayment(amountCents);
+      markClient(c.getNumber());
+    } finally {
+      clientLocks.unlock(c.getNumber());
+    }
+    awaitDurable(seq);
   }
 
   // adding product to product list
-  public Product addProduct(String name, double price, int qty) {
-    Product p = new Product(name, price, qty);
-    productList.insertProduct(p);
+  public Product addProduct(String name, long priceCents, int qty) {
+    Product p = new Product(productIds.next(), name, priceCents, qty);
+    long seq;
+    productLocks.lock(p.getNumber());
+    try {
+      if (!productList.insertProduct(p)) throw new IllegalStateException("Product number taken: " + p.getId());
+      seq = journal(out -> {
+        out.writeByte(OP_ADD_PRODUCT);
+        writeVarInt(out, p.getNumber());
+        writeText(out, name);
+        out.writeLong(priceCents);
+        writeVarInt(out, qty);
+      });
+      markProduct(p.getNumber());
+    } finally {
+      productLocks.unlock(p.getNumber());
+    }
+    awaitDurable(seq);
     return p;
   }
 
   // getting iterator of all products
   public Iterator<Product> getProducts() { return productList.getProducts(); }
 
-  // finding product by id
-  public Product findProduct(String id) { return productList.search(id); }
+  // getting one page of products in id order; token as for getClients(token, size)
+  public Page<Product> getProducts(String token, int size) {
+    return productList.page(pageStart(token, 1), size);
+  }
+
+  // splitting all products for parallel scans (see Reports)
+  public Spliterator<Product> productSpliterator() { return productList.spliterator(); }
+
+  // finding product by number ("P12" -> 12)
+  public Product findProduct(int productNumber) { return productList.findByNumber(productNumber); }
+
+  // finding product by id ("P7", any case) or else by name (case-insensitive)
+  public Product findProductByIdOrName(String input) { return productList.findByIdOrName(input); }
 
   // adding product to client's wishlist
-  public void addToWishlist(String clientId, String productId, int qty) {
-    Client c = findClient(clientId);
-    Product p = findProduct(productId);
+  public void addToWishlist(int clientNumber, int productNumber, int qty) {
+    Client c = findClient(clientNumber);
+    Product p = findProduct(productNumber);
     if (c == null || p == null) throw new IllegalArgumentException("Bad client or product id");
-    c.getWishlist().add(productId, qty);
+    if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
+    long seq;
+    clientLocks.lock(c.getNumber());
+    try {
+      seq = journal(out -> {
+        out.writeByte(OP_ADD_TO_WISHLIST);
+        writeVarInt(out, c.getNumber());
+        writeVarInt(out, p.getNumber());
+        writeVarInt(out, qty);
+      });
+      c.getWishlist().add(productNumber, qty);
+      markClient(c.getNumber());
+    } finally {
+      clientLocks.unlock(c.getNumber());
+    }
+    awaitDurable(seq);
   }
 
-  // getting wishlist of client
-  public List<WishlistItem> getWishlist(String clientId) {
-    Client c = findClient(clientId);
-    if (c == null) return Collections.emptyList();
-    return c.getWishlist().getItems();
+  // getting a copy of client's wishlist
+  public List<WishlistItem> getWishlist(int clientNumber) {
+    List<WishlistItem> items = new ArrayList<>();
+    forEachWishlistItem(clientNumber, (number, qty) -> items.add(new WishlistItem(number, qty)));
+    return items;
+  }
+
+  // visiting client's wishlist lines in place (under the client stripe, so keep visitor short)
+  public void forEachWishlistItem(int clientNumber, Wishlist.ItemVisitor visitor) {
+    Client c = findClient(clientNumber);
+    if (c == null) return;
+    clientLocks.lock(c.getNumber());
+    try {
+      c.getWishlist().forEach(visitor);
+    } finally {
+      clientLocks.unlock(c.getNumber());
+    }
   }
 
   // placing order from wishlist and processing fulfillment and waitlist
-  public Invoice placeOrderFromWishlist(String clientId) {
-    Client c = findClient(clientId);
-    if (c == null) throw new IllegalArgumentException("Client not found: " + clientId);
-    if (c.getWishlist().isEmpty()) return null;
+  public Invoice placeOrderFromWishlist(int clientNumber) {
+    Client c = findClient(clientNumber);
+    if (c == null) throw new IllegalArgumentException("Client not found: " + Ids.client(clientNumber));
 
-    Invoice invoice = new Invoice(clientId);
+    // holding the stripes of every product on the wishlist, in stripe order, then taking
+    // the wishlist and journaling the order in one client-stripe section, so no save or
+    // checkpoint sees the wishlist emptied without the order applied
+    int[] wanted = wishlistProducts(c);
+    if (wanted.length == 0) return null;
+    Invoice invoice;
+    long seq;
+    int[] held = productLocks.lockAll(wanted, wanted.length);
+    try {
+      Wishlist items;
+      clientLocks.lock(c.getNumber());
+      try {
+        items = takeCovered(c, held);
+        if (items.isEmpty()) return null;
+        markClient(c.getNumber());
+        seq = journalOrder(c, items);
+      } finally {
+        clientLocks.unlock(c.getNumber());
+      }
+      invoice = fillOrder(c, items);
+    } finally {
+      productLocks.unlockAll(held);
+    }
+    awaitDurable(seq);
+    return invoice;
+  }
 
-    // iterating through wishlist items
-    for (WishlistItem wi : c.getWishlist().getItems()) {
-      Product p = findProduct(wi.getProductId());
+  // fulfilling the given wishlist items for client under the caller's product stripes,
+  // waitlisting shortfalls and billing the rest; null if nothing could be fulfilled
+  private Invoice fillOrder(Client c, Wishlist items) {
+    int n = items.size();
+    Invoice invoice = new Invoice(c.getNumber(), n);
+    // iterating through wishlist items; lines for unknown products are skipped
+    for (int i = 0; i < n; i++) {
+      Product p = findProduct(items.productNumberAt(i));
       if (p == null) continue;
 
-      int want = wi.getQty();
+      int want = items.quantityAt(i);
       int got = p.fulfill(want);
+      markProduct(p.getNumber());
 
       // adding fulfilled items to invoice
       if (got > 0) {
-        invoice.addLine(p.getId(), p.getName(), got, p.getPrice());
+        invoice.addLine(p.getNumber(), p.getName(), got, p.getPriceCents());
       }
 
       // adding unfulfilled items to waitlist
       int shortfall = want - got;
       if (shortfall > 0) {
-        waitlist.add(p.getId(), shortfall, clientId);
+        waitlist.add(p.getNumber(), shortfall, c.getNumber());
+        markQueue(p.getNumber());
       }
     }
 
-    // clearing wishlist after processing
-    c.getWishlist().clear();
+    // adding invoice only if something was fulfilled; billed before the stripes
+    // go, so no checkpoint sees the stock taken without the invoice
+    if (invoice.getTotalCents() <= 0) return null;
+    bill(c, invoice);
+    return invoice;
+  }
+
+  // placing orders for many clients at once (e.g. nightly auto-order job);
+  // each product is resolved once and its stock is handed out in the given
+  // client order, so results match calling placeOrderFromWishlist in a loop
+  public BatchOrderResult placeOrdersFromWishlists(Collection<Integer> clientNumbers) {
+    // resolving clients up front (duplicates ordered once) so a bad number changes nothing
+    Map<Integer, Client> clients = new LinkedHashMap<>();
+    for (int number : clientNumbers) {
+      Client c = findClient(number);
+      if (c == null) throw new IllegalArgumentException("Client not found: " + Ids.client(number));
+      clients.putIfAbsent(number, c);
+    }
+
+    // holding the stripes of every product on any of the wishlists, in stripe order
+    int[] wanted = new int[16];
+    int count = 0;
+    for (Client c : clients.values()) {
+      int[] more = wishlistProducts(c);
+      if (count + more.length > wanted.length) wanted = Arrays.copyOf(wanted, Math.max(wanted.length * 2, count + more.length));
+      System.arraycopy(more, 0, wanted, count, more.length);
+      count += more.length;
+    }
+
+    BatchOrderResult result = new BatchOrderResult();
+    long seq = 0;
+    int[] held = productLocks.lockAll(wanted, count);
+    try {
+      // taking each wishlist and journaling it as one order in the same client-stripe
+      // section; replaying the orders in turn gives the same allocation
+      Map<Integer, Product> products = new HashMap<>();
+      Map<Product, List<Demand>> byProduct = new LinkedHashMap<>();
+      List<List<Demand>> perClient = new ArrayList<>(clients.size());
+      for (Client c : clients.values()) {
+        Wishlist items;
+        clientLocks.lock(c.getNumber());
+        try {
+          items = takeCovered(c, held);
+          if (!items.isEmpty()) {
+            markClient(c.getNumber());
+            seq = journalOrder(c, items);
+          }
+        } finally {
+          clientLocks.unlock(c.getNumber());
+        }
+
+        // collecting demand per client, resolving each distinct product once
+        List<Demand> demands = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+          Product p = products.computeIfAbsent(items.productNumberAt(i), this::findProduct);
+          if (p == null) continue;
+          Demand d = new Demand(c.getNumber(), p, items.quantityAt(i));
+          demands.add(d);
+          byProduct.computeIfAbsent(p, k -> new ArrayList<>()).add(d);
+        }
+        perClient.add(demands);
+      }
+
+      // allocating stock and waitlisting shortfalls product by product, clients in request order
+      for (Map.Entry<Product, List<Demand>> e : byProduct.entrySet()) {
+        Product p = e.getKey();
+        markProduct(p.getNumber());
+        for (Demand d : e.getValue()) {
+          d.got = p.fulfill(d.want);
+          int shortfall = d.want - d.got;
+          if (shortfall > 0) {
+            result.waitlisted.add(waitlist.enqueue(p.getNumber(), shortfall, d.clientNumber));
+            markQueue(p.getNumber());
+          }
+        }
+      }
+
+      // billing per client in wishlist order, still under the product stripes
+      Iterator<List<Demand>> demandsIt = perClient.iterator();
+      for (Client c : clients.values()) {
+        List<Demand> demands = demandsIt.next();
+        Invoice invoice = new Invoice(c.getNumber(), demands.size());
+        for (Demand d : demands) {
+          if (d.got > 0) invoice.addLine(d.product.getNumber(), d.product.getName(), d.got, d.product.getPriceCents());
+        }
+        if (invoice.getTotalCents() > 0) {
+          bill(c, invoice);
+          result.invoices.add(invoice);
+        }
+      }
+    } finally {
+      productLocks.unlockAll(held);
+    }
+    awaitDurable(seq);
+    return result;
+  }
 
-    // adding invoice only if something was fulfilled
-    if (invoice.getTotal() > 0) {
-      c.addInvoice(invoice);
-      return invoice;
-    } else {
-      return null;
+  // one wishlist line of a bulk order
+  private static class Demand {
+    final int clientNumber;
+    final Product product;
+    final int want;
+    int got;
+    Demand(int clientNumber, Product product, int want) {
+      this.clientNumber = clientNumber; this.product = product; this.want = want;
     }
   }
 
-  // receiving shipment and processing waitlist fulfillment
-  public void receiveShipment(String productId, int qty) {
-    Product p = findProduct(productId);
-    if (p == null) throw new IllegalArgumentException("Product not found: " + productId);
+  // invoices and waitlist entries produced by a bulk order run
+  public static class BatchOrderResult {
+    private final List<Invoice> invoices = new ArrayList<>();
+    private final List<WaitlistItem> waitlisted = new ArrayList<>();
+
+    public List<Invoice> getInvoices() { return invoices; }
+    public List<WaitlistItem> getWaitlisted() { return waitlisted; }
+  }
+
+  // receiving shipment and filling waitlist per product's allocation policy;
+  // returning units allocated to waitlisted clients
+  public int receiveShipment(int productNumber, int qty) {
+    Product p = findProduct(productNumber);
+    if (p == null) throw new IllegalArgumentException("Product not found: " + Ids.product(productNumber));
     if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
 
-    // adding received quantity to stock
-    p.receive(qty);
+    // adding received quantity to stock and filling waitlist under the product stripe
+    List<Invoice> billed = new ArrayList<>();
+    int allocated;
+    long seq;
+    productLocks.lock(productNumber);
+    try {
+      seq = journal(out -> {
+        out.writeByte(OP_RECEIVE_SHIPMENT);
+        writeVarInt(out, p.getNumber());
+        writeVarInt(out, qty);
+      });
+      p.receive(qty);
+      markProduct(productNumber);
+      allocated = allocateWaitlist(p, null, billed);
+      for (Invoice inv : billed) bill(findClient(inv.getClientNumber()), inv);
+    } finally {
+      productLocks.unlock(productNumber);
+    }
+    awaitDurable(seq);
+    return allocated;
+  }
+
+  // receiving a whole truck at once: applying every quantity first, then
+  // allocating waitlists in one pass with at most one invoice per client;
+  // returning the consolidated invoices in the order clients were first served
+  public List<Invoice> receiveShipments(Map<Integer, Integer> shipment) {
+    // validating everything up front so a bad line leaves stock untouched
+    Map<Product, Integer> received = new LinkedHashMap<>();
+    for (Map.Entry<Integer, Integer> e : shipment.entrySet()) {
+      Product p = (e.getKey() == null) ? null : findProduct(e.getKey());
+      if (p == null) throw new IllegalArgumentException("Product not found: " + e.getKey());
+      Integer qty = e.getValue();
+      if (qty == null || qty <= 0) throw new IllegalArgumentException("qty must be > 0 for " + p.getId());
+      received.merge(p, qty, Integer::sum);
+    }
 
-    // filling waitlist FIFO while stock is available
-    Deque<WaitlistItem> q = waitlist.queueFor(productId);
-    if (q == null) return;
+    Map<Integer, Invoice> invoices = new LinkedHashMap<>();
+    long seq;
+    int[] held = productLocks.lockAll(numbers(shipment.keySet()), shipment.size());
+    try {
+      seq = journal(out -> {
+        out.writeByte(OP_RECEIVE_SHIPMENTS);
+        writeVarInt(out, received.size());
+        for (Map.Entry<Product, Integer> e : received.entrySet()) {
+          writeVarInt(out, e.getKey().getNumber());
+          writeVarInt(out, e.getValue());
+        }
+      });
+      for (Map.Entry<Product, Integer> e : received.entrySet()) {
+        e.getKey().receive(e.getValue());
+        markProduct(e.getKey().getNumber());
+      }
+      for (Product p : received.keySet()) allocateWaitlist(p, invoices, null);
 
-    while (!q.isEmpty() && p.getStockQuantity() > 0) {
-      WaitlistItem head = q.peekFirst();
-      int can = Math.min(p.getStockQuantity(), head.getQty());
+      // billing clients only once their invoice is complete
+      for (Invoice inv : invoices.values()) bill(findClient(inv.getClientNumber()), inv);
+    } finally {
+      productLocks.unlockAll(held);
+    }
+    awaitDurable(seq);
+    return new ArrayList<>(invoices.values());
+  }
+
+  // filling the waitlist entries the product's policy picks for the stock on hand;
+  // batch == null adds one invoice per fill to perFill, otherwise lines collect
+  // per client in batch. Caller holds the product stripe and bills before releasing it.
+  private int allocateWaitlist(Product p, Map<Integer, Invoice> batch, List<Invoice> perFill) {
+    int productNumber = p.getNumber();
+    int stock = p.getStockQuantity();
+    if (stock <= 0) return 0;
+    int allocated = 0;
+    for (WaitlistItem wi : p.getAllocationPolicy().select(waitlist.queueFor(productNumber), stock)) {
+      int can = p.fulfill(wi.getQty());
       if (can <= 0) break;
 
-      // fulfilling entire waitlist item
-      if (can == head.getQty()) {
-        p.fulfill(can);
-        Client c = findClient(head.getClientId());
-        if (c != null) {
-          Invoice inv = new Invoice(c.getId());
-          inv.addLine(p.getId(), p.getName(), can, p.getPrice());
-          c.addInvoice(inv);
+      int clientNumber = wi.getClientNumber();
+      if (batch == null) {
+        if (findClient(clientNumber) != null) {
+          Invoice inv = new Invoice(clientNumber);
+          inv.addLine(productNumber, p.getName(), can, p.getPriceCents());
+          perFill.add(inv);
         }
-        q.removeFirst();
       } else {
-        // stopping if not enough to fulfill next waitlist item
-        break;
+        Invoice inv = batch.get(clientNumber);
+        if (inv == null && findClient(clientNumber) != null) {
+          inv = new Invoice(clientNumber);
+          batch.put(clientNumber, inv);
+        }
+        if (inv != null) inv.addLine(productNumber, p.getName(), can, p.getPriceCents());
       }
+      waitlist.fill(wi, can);
+      markQueue(productNumber);
+      allocated += can;
+    }
+    return allocated;
+  }
+
+  // choosing how shipments of a product are allocated to its waitlist
+  public void setAllocationPolicy(int productNumber, AllocationPolicy policy) {
+    Product p = findProduct(productNumber);
+    if (p == null) throw new IllegalArgumentException("Product not found: " + Ids.product(productNumber));
+    if (policy == null) throw new IllegalArgumentException("policy must not be null");
+    long seq;
+    productLocks.lock(productNumber);
+    try {
+      seq = journal(out -> {
+        out.writeByte(OP_SET_ALLOCATION_POLICY);
+        writeVarInt(out, p.getNumber());
+        out.writeByte(policy.ordinal());
+      });
+      p.setAllocationPolicy(policy);
+      markProduct(productNumber);
+    } finally {
+      productLocks.unlock(productNumber);
+    }
+    awaitDurable(seq);
+  }
+
+  // renaming product
+  public void renameProduct(int productNumber, String name) {
+    Product p = findProduct(productNumber);
+    if (p == null) throw new IllegalArgumentException("Product not found: " + Ids.product(productNumber));
+    long seq;
+    productLocks.lock(productNumber);
+    try {
+      seq = journal(out -> {
+        out.writeByte(OP_RENAME_PRODUCT);
+        writeVarInt(out, p.getNumber());
+        writeText(out, name);
+      });
+      productList.rename(p, name);
+      markProduct(productNumber);
+    } finally {
+      productLocks.unlock(productNumber);
+    }
+    awaitDurable(seq);
+  }
+
+  // changing product's price; invoices already billed keep the old price
+  public void setProductPrice(int productNumber, long priceCents) {
+    Product p = findProduct(productNumber);
+    if (p == null) throw new IllegalArgumentException("Product not found: " + Ids.product(productNumber));
+    if (priceCents < 0) throw new IllegalArgumentException("price must be >= 0");
+    long seq;
+    productLocks.lock(productNumber);
+    try {
+      seq = journal(out -> {
+        out.writeByte(OP_SET_PRODUCT_PRICE);
+        writeVarInt(out, p.getNumber());
+        out.writeLong(priceCents);
+      });
+      p.setPriceCents(priceCents);
+      markProduct(productNumber);
+    } finally {
+      productLocks.unlock(productNumber);
+    }
+    awaitDurable(seq);
+  }
+
+  // holding exactly qty units of product aside if that many are in stock; all or nothing
+  public boolean reserve(int productNumber, int qty) {
+    Product p = findProduct(productNumber);
+    if (p == null) throw new IllegalArgumentException("Product not found: " + Ids.product(productNumber));
+    if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
+    boolean reserved;
+    long seq;
+    productLocks.lock(productNumber);
+    try {
+      // a reservation that cannot be met changes nothing, so only successes are journaled
+      if (p.getStockQuantity() < qty) return false;
+      seq = journalReservation(OP_RESERVE, p, qty);
+      reserved = p.tryReserve(qty);
+      markProduct(productNumber);
+    } finally {
+      productLocks.unlock(productNumber);
+    }
+    awaitDurable(seq);
+    return reserved;
+  }
+
+  // turning qty reserved units of product into a sale
+  public void commitReservation(int productNumber, int qty) {
+    changeReservation(OP_COMMIT_RESERVATION, productNumber, qty);
+  }
+
+  // handing qty reserved units of product back to stock
+  public void releaseReservation(int productNumber, int qty) {
+    changeReservation(OP_RELEASE_RESERVATION, productNumber, qty);
+  }
+
+  private void changeReservation(byte op, int productNumber, int qty) {
+    Product p = findProduct(productNumber);
+    if (p == null) throw new IllegalArgumentException("Product not found: " + Ids.product(productNumber));
+    if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
+    long seq;
+    productLocks.lock(productNumber);
+    try {
+      // checked before journaling, so replay never meets a record that fails
+      int held = p.getReservedQuantity();
+      if (held < qty) throw new IllegalStateException("only " + held + " units reserved for " + p.getId());
+      seq = journalReservation(op, p, qty);
+      if (op == OP_COMMIT_RESERVATION) p.commit(qty);
+      else p.release(qty);
+      markProduct(productNumber);
+    } finally {
+      productLocks.unlock(productNumber);
     }
+    awaitDurable(seq);
+  }
+
+  private long journalReservation(byte op, Product p, int qty) {
+    return journal(out -> {
+      out.writeByte(op);
+      writeVarInt(out, p.getNumber());
+      writeVarInt(out, qty);
+    });
   }
 
   // getting waitlist by product
-  public List<WaitlistItem> getProductWaitlist(String productId) {
-    Deque<WaitlistItem> q = waitlist.queueFor(productId);
-    return (q == null) ? Collections.emptyList() : new ArrayList<>(q);
+  public List<WaitlistItem> getProductWaitlist(int productNumber) {
+    productLocks.lock(productNumber);
+    try {
+      return new ArrayList<>(waitlist.queueFor(productNumber));
+    } finally {
+      productLocks.unlock(productNumber);
+    }
+  }
+
+  // getting the units waitlisted for a product, summed under its stripe without copying the queue
+  public int getWaitingUnits(int productNumber) {
+    productLocks.lock(productNumber);
+    try {
+      return waitlist.unitsForProduct(productNumber);
+    } finally {
+      productLocks.unlock(productNumber);
+    }
+  }
+
+  // product numbers on client's wishlist right now, read under the client stripe
+  private int[] wishlistProducts(Client c) {
+    clientLocks.lock(c.getNumber());
+    try {
+      return productNumbers(c.getWishlist());
+    } finally {
+      clientLocks.unlock(c.getNumber());
+    }
+  }
+
+  private static int[] productNumbers(Wishlist items) {
+    int[] out = new int[items.size()];
+    for (int i = 0; i < out.length; i++) out[i] = items.productNumberAt(i);
+    return out;
+  }
+
+  // taking over the lines of client's wishlist whose product stripes are held (caller
+  // holds the client stripe too); lines for other products were added after the stripes
+  // were chosen and stay for the next order
+  private Wishlist takeCovered(Client c, int[] held) {
+    Wishlist wishlist = c.getWishlist();
+    boolean all = true;
+    for (int i = 0; i < wishlist.size() && all; i++) all = productLocks.covers(held, wishlist.productNumberAt(i));
+    if (all) return wishlist.take();
+    Wishlist taken = new Wishlist();
+    for (int i = 0; i < wishlist.size(); ) {
+      int number = wishlist.productNumberAt(i);
+      if (productLocks.covers(held, number)) {
+        taken.add(number, wishlist.quantityAt(i));
+        wishlist.remove(number);
+      } else {
+        i++;
+      }
+    }
+    return taken;
+  }
+
+  // adding a completed invoice to client's history and balance under the client stripe
+  // (taken inside the caller's product stripes)
+  private void bill(Client c, Invoice inv) {
+    clientLocks.lock(c.getNumber());
+    try {
+      c.addInvoice(inv);
+      markClient(c.getNumber());
+      archive.append(inv);
+    } finally {
+      clientLocks.unlock(c.getNumber());
+    }
   }
 
   // getting waitlist by client
-  public List<WaitlistItem> getClientWaitlist(String clientId) {
-    return waitlist.getClientWaitlist(clientId);
+  public List<WaitlistItem> getClientWaitlist(int clientNumber) {
+    return waitlist.getClientWaitlist(clientNumber);
+  }
+
+  /**
+   * Getting the columnar archive of every billed invoice line for reporting.
+   * bill() appends each invoice as it is created; after a load the saved rows
+   * are read from the archive file on the first query, without any stripe.
+   */
+  public InvoiceArchive invoiceArchive() { return archive; }
+
+  // persistence
+
+  // writing a consistent snapshot of the whole warehouse (see WarehouseCodec);
+  // when journaling, this is also the checkpoint that empties the operation log.
+  // Delta segments next to path are folded in and deleted, and change tracking
+  // starts over so the next checkpoint can be a delta against this snapshot.
+  public void save(Path path) throws IOException {
+    // product stripes before client stripes; nobody else ever holds both kinds
+    int[] products = productLocks.lockEverything();
+    try {
+      int[] clients = clientLocks.lockEverything();
+      try {
+        WarehouseCodec.write(this, path);
+        changes = new Changes();
+        WarehouseCodec.deleteDeltas(path, checkpointSeq);
+        // everything journaled so far is in the snapshot now
+        OperationLog l = log;
+        if (l != null) l.truncate();
+      } finally {
+        clientLocks.unlockAll(clients);
+      }
+    } finally {
+      productLocks.unlockAll(products);
+    }
+  }
+
+  /**
+   * Writing only what changed since the last snapshot or delta as the next delta
+   * segment beside snapshot, then emptying the operation log. Falls back to a full
+   * save when there is no snapshot to build on yet. Returns the delta file, or
+   * snapshot itself after a full save.
+   */
+  public Path checkpoint(Path snapshot) throws IOException {
+    if (changes == null || !Files.exists(snapshot)) {
+      save(snapshot);
+      return snapshot;
+    }
+    int[] products = productLocks.lockEverything();
+    try {
+      int[] clients = clientLocks.lockEverything();
+      try {
+        Path delta = WarehouseCodec.writeDelta(this, changes, checkpointSeq + 1, snapshot);
+        checkpointSeq++;
+        changes = new Changes();
+        OperationLog l = log;
+        if (l != null) l.truncate();
+        return delta;
+      } finally {
+        clientLocks.unlockAll(clients);
+      }
+    } finally {
+      productLocks.unlockAll(products);
+    }
+  }
+
+  // reading a snapshot, plus any later delta segments beside it, into a new
+  // warehouse with its own client and product lists
+  public static Warehouse load(Path path) throws IOException {
+    Warehouse wh = WarehouseCodec.read(path);
+    InvoiceStore invoices = InvoiceStore.forSnapshot(path);
+    for (Path delta : WarehouseCodec.deltaFiles(path, wh.checkpointSeq)) {
+      WarehouseCodec.applyDelta(wh, delta, invoices);
+    }
+    wh.archive = new InvoiceArchive(InvoiceArchive.fileFor(path), wh.archivedRows);
+    return wh;
+  }
+
+  /**
+   * Starting a journaled warehouse: loading the snapshot if present, replaying
+   * the operation log over it, then journaling every further mutation to that log.
+   */
+  public static Warehouse recover(Path snapshot, Path journal, OperationLog.Durability durability,
+                                  long groupMillis) throws IOException {
+    Warehouse wh = Files.exists(snapshot) ? load(snapshot) : new Warehouse(new ClientList(), new ProductList());
+    // replayed mutations are not in the snapshot yet, so the next delta must carry them
+    wh.changes = new Changes();
+    // records the snapshot already holds (a crash before the log was truncated) are skipped
+    long last = OperationLog.replay(journal, wh.journalSeq, wh::replay);
+    wh.journalSeq = last;
+    wh.log = new OperationLog(journal, durability, groupMillis, last);
+    return wh;
+  }
+
+  // flushing and closing the operation log, if any
+  public void closeJournal() throws IOException {
+    OperationLog l = log;
+    if (l != null) restoreJournalSeq(l.lastSeq());
+    log = null;
+    if (l != null) l.close();
+  }
+
+  // re-applying one journaled mutation (log is not attached yet, so nothing is re-journaled)
+  private void replay(DataInputStream in) throws IOException {
+    byte op = in.readByte();
+    switch (op) {
+      case OP_ADD_CLIENT: {
+        int number = readClientNumber(in);
+        restoreClientCounter(number + 1);
+        Client c = new Client(readText(in), readText(in), number);
+        clientList.insertClient(c);
+        markClient(c.getNumber());
+        break;
+      }
+      case OP_ADD_PRODUCT: {
+        int number = readProductNumber(in);
+        restoreProduct(new Product(number, readText(in), in.readLong(), readVarInt(in), 0,
+            AllocationPolicy.STRICT_FIFO));
+        markProduct(number);
+        break;
+      }
+      case OP_ADD_TO_WISHLIST:
+        addToWishlist(readClientNumber(in), readProductNumber(in), readVarInt(in));
+        break;
+      case OP_PLACE_ORDER: {
+        Client c = findClient(readClientNumber(in));
+        int n = readVarInt(in);
+        Wishlist items = new Wishlist();
+        for (int i = 0; i < n; i++) items.add(readProductNumber(in), readVarInt(in));
+        if (c == null) throw new IOException("journaled order for unknown client");
+        for (int i = 0; i < items.size(); i++) c.getWishlist().subtract(items.productNumberAt(i), items.quantityAt(i));
+        markClient(c.getNumber());
+        int[] held = productLocks.lockAll(productNumbers(items), items.size());
+        try {
+          fillOrder(c, items);
+        } finally {
+          productLocks.unlockAll(held);
+        }
+        break;
+      }
+      case OP_RECEIVE_SHIPMENT:
+        receiveShipment(readProductNumber(in), readVarInt(in));
+        break;
+      case OP_RECORD_PAYMENT:
+        recordPayment(readClientNumber(in), in.readLong());
+        break;
+      case OP_RECEIVE_SHIPMENTS: {
+        int n = readVarInt(in);
+        Map<Integer, Integer> shipment = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) shipment.put(readProductNumber(in), readVarInt(in));
+        receiveShipments(shipment);
+        break;
+      }
+      case OP_SET_ALLOCATION_POLICY:
+        setAllocationPolicy(readProductNumber(in), AllocationPolicy.values()[in.readByte()]);
+        break;
+      case OP_RENAME_PRODUCT:
+        renameProduct(readProductNumber(in), readText(in));
+        break;
+      case OP_SET_PRODUCT_PRICE:
+        setProductPrice(readProductNumber(in), in.readLong());
+        break;
+      case OP_RESERVE:
+        reserve(readProductNumber(in), readVarInt(in));
+        break;
+      case OP_COMMIT_RESERVATION:
+        commitReservation(readProductNumber(in), readVarInt(in));
+        break;
+      case OP_RELEASE_RESERVATION:
+        releaseReservation(readProductNumber(in), readVarInt(in));
+        break;
+      default:
+        throw new IOException("unknown journal record type " + op);
+    }
+  }
+
+  // appending a record before the mutation it describes is applied; returns its
+  // sequence number (0 when not journaling) for awaitDurable once the stripes are released
+  private long journal(OperationLog.RecordWriter record) {
+    OperationLog l = log;
+    return (l != null) ? l.enqueue(record) : 0;
+  }
+
+  // waiting, outside every stripe, until record seq is as durable as the log's mode promises
+  private void awaitDurable(long seq) {
+    OperationLog l = log;
+    if (l != null && seq > 0) l.awaitDurable(seq);
   }
+
+  private long journalOrder(Client c, Wishlist items) {
+    return journal(out -> {
+      out.writeByte(OP_PLACE_ORDER);
+      writeVarInt(out, c.getNumber());
+      writeVarInt(out, items.size());
+      for (int i = 0; i < items.size(); i++) {
+        writeVarInt(out, items.productNumberAt(i));
+        writeVarInt(out, items.quantityAt(i));
+      }
+    });
+  }
+
+  // nullable strings for names and addresses
+  private static void writeText(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) out.writeUTF(s);
+  }
+
+  private static String readText(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  // numbers, quantities and counts as varints (7 bits a byte, high bit set while more follow)
+  private static void writeVarInt(DataOutputStream out, int v) throws IOException {
+    while ((v & ~0x7F) != 0) {
+      out.writeByte((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int v = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = in.readUnsignedByte();
+      v |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return v;
+    }
+    throw new IOException("malformed varint in journal");
+  }
+
+  // the log keeps ids as their numbers (C12 as 12); "C12"/"P7" only appear at the edges
+  private static int readClientNumber(DataInputStream in) throws IOException {
+    int n = readVarInt(in);
+    if (n <= 0) throw new IOException("bad client number in journal: " + n);
+    return n;
+  }
+
+  private static int readProductNumber(DataInputStream in) throws IOException {
+    int n = readVarInt(in);
+    if (n <= 0) throw new IOException("bad product number in journal: " + n);
+    return n;
+  }
+
+  // keys as an array for LockStripes.lockAll
+  private static int[] numbers(Collection<Integer> keys) {
+    int[] out = new int[keys.size()];
+    int i = 0;
+    for (int k : keys) out[i++] = k;
+    return out;
+  }
+
+  // numbers of products, clients and waitlist queues touched since the last checkpoint;
+  // marked under the same stripe as the change, so a checkpoint holding every
+  // stripe sees a complete set
+  static final class Changes {
+    final Set<Integer> products = ConcurrentHashMap.newKeySet();
+    final Set<Integer> clients = ConcurrentHashMap.newKeySet();
+    final Set<Integer> queues = ConcurrentHashMap.newKeySet();
+  }
+
+  private void markProduct(int productNumber) {
+    Changes ch = changes;
+    if (ch != null) ch.products.add(productNumber);
+  }
+
+  private void markClient(int clientNumber) {
+    Changes ch = changes;
+    if (ch != null) ch.clients.add(clientNumber);
+  }
+
+  private void markQueue(int productNumber) {
+    Changes ch = changes;
+    if (ch != null) ch.queues.add(productNumber);
+  }
+
+  boolean tracksChanges() { return changes != null; }
+
+  long checkpointSeq() { return checkpointSeq; }
+
+  void restoreCheckpointSeq(long seq) { checkpointSeq = Math.max(checkpointSeq, seq); }
+
+  void restoreArchivedRows(int rows) { archivedRows = Math.max(archivedRows, rows); }
+
+  // last journal record in this state; read while holding every stripe, so all appended records are applied
+  long journalSeq() {
+    OperationLog l = log;
+    return l == null ? journalSeq : Math.max(journalSeq, l.lastSeq());
+  }
+
+  void restoreJournalSeq(long seq) { journalSeq = Math.max(journalSeq, seq); }
+
+  // decoding a continuation token from a previous page
+  private static int pageStart(String token, int first) {
+    if (token == null) return first;
+    try {
+      int start = Integer.parseInt(token);
+      if (start >= first) return start;
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("Bad page token: " + token);
+  }
+
+  // one past the highest client or product number in use, saved as the restart point. Not the
+  // allocators' high-water marks: those count the unused tails of thread blocks, which would
+  // open a gap after every restart (C142, then C193). A number handed out but not inserted
+  // by save time is either journaled later (replay advances past it) or never used at all
+  int nextClientNumber() { return clientList.maxNumber() + 1; }
+
+  int nextProductNumber() { return productList.maxNumber() + 1; }
+
+  void restoreClientCounter(int next) { clientIds.advanceTo(next); }
+
+  void restoreProductCounter(int next) { productIds.advanceTo(next); }
+
+  int productCount() { return productList.size(); }
+
+  int clientCount() { return clientList.size(); }
+
+  Waitlist waitlist() { return waitlist; }
+
+  // re-inserting a loaded product and keeping new product numbers past it
+  void restoreProduct(Product p) {
+    productList.insertProduct(p);
+    restoreProductCounter(p.getNumber() + 1);
+  }
+
+  // re-inserting a loaded client
+  void restoreClient(Client c) { clientList.insertClient(c); }
+
+  // renaming a loaded client, keeping the name index in step
+  void renameClient(Client c, String name) { clientList.rename(c, name); }
+
+  void restoreProductName(Product p, String name) { productList.rename(p, name); }
 }
@@ -0,0 +1,526 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compact binary snapshot format for a Warehouse. Counts and ids are varints
+ * ("C12"/"P7" store just 12/7), strings are length-prefixed UTF-8, money is
+ * zig-zag varint cents (balances can be negative).
+ * Files are streamed through a fixed direct buffer over a FileChannel.
+ *
+ * Layout: magic, version, next client number, last delta sequence number,
+ * last journal sequence number, invoice archive rows, next product number, products, clients (with wishlist,
+ * and invoice history as a position in the InvoiceStore), waitlist queues. Delta segments use the
+ * same records but only for what changed since the previous checkpoint, after their own sequence
+ * number, the last journal sequence number, the archive rows and both counters.
+ */
+public final class WarehouseCodec {
+  private static final int MAGIC = 0x57485331; // "WHS1"
+  private static final int DELTA_MAGIC = 0x57484431; // "WHD1"
+  private static final int VERSION = 1;
+  private static final int DELTA_VERSION = 1;
+  private static final String DELTA_SUFFIX = ".delta.";
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final AllocationPolicy[] POLICIES = AllocationPolicy.values();
+
+  private WarehouseCodec() { }
+
+  // writing snapshot to a temp file, then atomically replacing path; invoices
+  // billed since the last checkpoint are first moved to the invoice store
+  public static void write(Warehouse wh, Path path) throws IOException {
+    InvoiceStore store = InvoiceStore.forSnapshot(path);
+    for (Iterator<Client> it = wh.getClients(); it.hasNext(); ) it.next().spillInvoices(store);
+    store.force();
+    wh.invoiceArchive().persist(InvoiceArchive.fileFor(path));
+
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      Writer out = new Writer(ch);
+      encode(wh, out);
+      out.flush();
+      ch.force(true);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // reading snapshot into a new, independent warehouse; invoice history stays
+  // on disk until a client's invoices are asked for
+  public static Warehouse read(Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      return decode(new Reader(ch), InvoiceStore.forSnapshot(path));
+    }
+  }
+
+  // encoding
+
+  static void encode(Warehouse wh, Writer out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeVarUInt(VERSION);
+    out.writeVarUInt(wh.nextClientNumber());
+    out.writeVarLong(wh.checkpointSeq());
+    out.writeVarLong(wh.journalSeq());
+    out.writeVarUInt(wh.invoiceArchive().persistedRows());
+    out.writeVarUInt(wh.nextProductNumber());
+
+    out.writeVarUInt(wh.productCount());
+    for (Iterator<Product> it = wh.getProducts(); it.hasNext(); ) writeProduct(out, it.next());
+
+    out.writeVarUInt(wh.clientCount());
+    for (Iterator<Client> it = wh.getClients(); it.hasNext(); ) writeClient(out, it.next());
+
+    Waitlist waitlist = wh.waitlist();
+    out.writeVarUInt(waitlist.productCount());
+    for (Iterator<Map.Entry<Integer, Collection<WaitlistItem>>> it = waitlist.entries(); it.hasNext(); ) {
+      Map.Entry<Integer, Collection<WaitlistItem>> e = it.next();
+      writeQueue(out, e.getKey(), e.getValue());
+    }
+  }
+
+  private static void writeProduct(Writer out, Product p) throws IOException {
+    out.writeId(Ids.PRODUCT_PREFIX, p.getNumber());
+    out.writeString(p.getName());
+    out.writeCents(p.getPriceCents());
+    out.writeVarInt(p.getStockQuantity());
+    out.writeVarInt(p.getReservedQuantity());
+    out.writeVarUInt(p.getAllocationPolicy().ordinal());
+  }
+
+  // writing client fields, wishlist and where its (already spilled) invoices are stored
+  private static void writeClient(Writer out, Client c) throws IOException {
+    out.writeId(Ids.CLIENT_PREFIX, c.getNumber());
+    out.writeString(c.getName());
+    out.writeString(c.getAddress());
+    out.writeCents(c.getBalanceCents());
+
+    Wishlist wishlist = c.getWishlist();
+    out.writeVarUInt(wishlist.size());
+    for (int i = 0; i < wishlist.size(); i++) {
+      out.writeId(Ids.PRODUCT_PREFIX, wishlist.productNumberAt(i));
+      out.writeVarUInt(wishlist.quantityAt(i));
+    }
+
+    out.writeVarLong(c.historyHead());
+    out.writeVarUInt(c.historyCount());
+  }
+
+  static void writeInvoice(Writer out, Invoice inv) throws IOException {
+    out.writeString(inv.getId());
+    out.writeVarLong(inv.getCreatedAt());
+    out.writeVarUInt(inv.getLineCount());
+    for (int k = 0; k < inv.getLineCount(); k++) {
+      Invoice.Line l = inv.getLine(k);
+      out.writeId(Ids.PRODUCT_PREFIX, l.productNumber);
+      out.writeString(l.productName);
+      out.writeVarUInt(l.qty);
+      out.writeCents(l.unitCents);
+    }
+  }
+
+  private static void writeQueue(Writer out, int productNumber, Collection<WaitlistItem> queue) throws IOException {
+    out.writeId(Ids.PRODUCT_PREFIX, productNumber);
+    out.writeVarUInt(queue.size());
+    for (WaitlistItem wi : queue) {
+      out.writeString(wi.getItemId());
+      out.writeId(Ids.CLIENT_PREFIX, wi.getClientNumber());
+      out.writeVarUInt(wi.getQty());
+      out.writeVarLong(wi.getRequestedAt().getTime());
+    }
+  }
+
+  // decoding
+
+  static Warehouse decode(Reader in, InvoiceStore store) throws IOException {
+    if (in.readInt() != MAGIC) throw new IOException("Not a warehouse snapshot");
+    int version = in.readVarUInt();
+    if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    wh.restoreClientCounter(in.readVarUInt());
+    wh.restoreCheckpointSeq(in.readVarLong());
+    wh.restoreJournalSeq(in.readVarLong());
+    wh.restoreArchivedRows(in.readVarUInt());
+    wh.restoreProductCounter(in.readVarUInt());
+
+    int products = in.readVarUInt();
+    for (int i = 0; i < products; i++) wh.restoreProduct(readProduct(in));
+
+    int clients = in.readVarUInt();
+    for (int i = 0; i < clients; i++) {
+      int number = in.readNumber(Ids.CLIENT_PREFIX);
+      Client c = new Client(in.readString(), in.readString(), number);
+      long balance = in.readCents();
+      readWishlist(in, c.getWishlist());
+      c.restoreHistory(balance, store, in.readVarLong(), in.readVarUInt());
+      wh.restoreClient(c);
+    }
+
+    Waitlist waitlist = wh.waitlist();
+    int queues = in.readVarUInt();
+    for (int i = 0; i < queues; i++) {
+      for (WaitlistItem wi : readQueue(in, in.readNumber(Ids.PRODUCT_PREFIX))) waitlist.restore(wi);
+    }
+    return wh;
+  }
+
+  private static Product readProduct(Reader in) throws IOException {
+    int number = in.readNumber(Ids.PRODUCT_PREFIX);
+    return new Product(number, in.readString(), in.readCents(), in.readVarInt(), in.readVarInt(),
+        POLICIES[in.readVarUInt()]);
+  }
+
+  private static void readWishlist(Reader in, Wishlist wishlist) throws IOException {
+    int n = in.readVarUInt();
+    for (int j = 0; j < n; j++) wishlist.add(in.readNumber(Ids.PRODUCT_PREFIX), in.readVarUInt());
+  }
+
+  static Invoice readInvoice(Reader in, int clientNumber) throws IOException {
+    String id = in.readString();
+    long createdAt = in.readVarLong();
+    int lines = in.readVarUInt();
+    Invoice inv = new Invoice(id, clientNumber, createdAt, lines);
+    for (int k = 0; k < lines; k++) {
+      inv.addLine(in.readNumber(Ids.PRODUCT_PREFIX), in.readString(), in.readVarUInt(), in.readCents());
+    }
+    return inv;
+  }
+
+  private static List<WaitlistItem> readQueue(Reader in, int productNumber) throws IOException {
+    int n = in.readVarUInt();
+    List<WaitlistItem> items = new ArrayList<>(n);
+    for (int j = 0; j < n; j++) {
+      String itemId = in.readString();
+      int clientNumber = in.readNumber(Ids.CLIENT_PREFIX);
+      int qty = in.readVarUInt();
+      items.add(new WaitlistItem(itemId, productNumber, clientNumber, qty, new Date(in.readVarLong())));
+    }
+    return items;
+  }
+
+  // delta segments: only the products, clients and waitlist queues changed since
+  // the previous checkpoint, applied in order over the last full snapshot
+
+  // writing delta segment seq of snapshot (caller keeps the warehouse still while this runs);
+  // entities go in number order, so new ones are listed in the order they were numbered after applyDelta
+  static Path writeDelta(Warehouse wh, Warehouse.Changes changes, long seq, Path snapshot) throws IOException {
+    List<Client> clients = new ArrayList<>();
+    for (int number : sorted(changes.clients)) {
+      Client c = wh.findClient(number);
+      if (c != null) clients.add(c);
+    }
+    InvoiceStore store = InvoiceStore.forSnapshot(snapshot);
+    for (Client c : clients) c.spillInvoices(store);
+    store.force();
+    int archived = wh.invoiceArchive().persist(InvoiceArchive.fileFor(snapshot));
+
+    Path path = deltaFile(snapshot, seq);
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      Writer out = new Writer(ch);
+      out.writeInt(DELTA_MAGIC);
+      out.writeVarUInt(DELTA_VERSION);
+      out.writeVarLong(seq);
+      out.writeVarLong(wh.journalSeq());
+      out.writeVarUInt(archived);
+      out.writeVarUInt(wh.nextClientNumber());
+      out.writeVarUInt(wh.nextProductNumber());
+
+      List<Product> products = new ArrayList<>();
+      for (int number : sorted(changes.products)) {
+        Product p = wh.findProduct(number);
+        if (p != null) products.add(p);
+      }
+      out.writeVarUInt(products.size());
+      for (Product p : products) writeProduct(out, p);
+
+      out.writeVarUInt(clients.size());
+      for (Client c : clients) writeClient(out, c);
+
+      int[] queues = sorted(changes.queues);
+      out.writeVarUInt(queues.length);
+      for (int number : queues) writeQueue(out, number, wh.waitlist().queueFor(number));
+
+      out.flush();
+      ch.force(true);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return path;
+  }
+
+  // the changed numbers in ascending order (hash-set order would reshuffle new entities)
+  private static int[] sorted(Set<Integer> numbers) {
+    int[] out = new int[numbers.size()];
+    int n = 0;
+    for (int number : numbers) {
+      if (n == out.length) out = Arrays.copyOf(out, n * 2 + 1);
+      out[n++] = number;
+    }
+    out = Arrays.copyOf(out, n);
+    Arrays.sort(out);
+    return out;
+  }
+
+  // applying one delta segment over wh; applying the same segment twice is harmless
+  static void applyDelta(Warehouse wh, Path path, InvoiceStore store) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      Reader in = new Reader(ch);
+      if (in.readInt() != DELTA_MAGIC) throw new IOException("Not a warehouse delta: " + path);
+      int version = in.readVarUInt();
+      if (version != DELTA_VERSION) throw new IOException("Unsupported delta version " + version);
+      long seq = in.readVarLong();
+      long journalSeq = in.readVarLong();
+      wh.restoreArchivedRows(in.readVarUInt());
+      wh.restoreClientCounter(in.readVarUInt());
+      wh.restoreProductCounter(in.readVarUInt());
+
+      int products = in.readVarUInt();
+      for (int i = 0; i < products; i++) {
+        Product saved = readProduct(in);
+        Product p = wh.findProduct(saved.getNumber());
+        if (p == null) {
+          wh.restoreProduct(saved);
+        } else {
+          if (!Objects.equals(saved.getName(), p.getName())) wh.restoreProductName(p, saved.getName());
+          p.setPriceCents(saved.getPriceCents());
+          p.restoreCounters(saved.getStockQuantity(), saved.getReservedQuantity());
+          p.setAllocationPolicy(saved.getAllocationPolicy());
+        }
+      }
+
+      int clients = in.readVarUInt();
+      for (int i = 0; i < clients; i++) {
+        int number = in.readNumber(Ids.CLIENT_PREFIX);
+        String name = in.readString();
+        String address = in.readString();
+        long balance = in.readCents();
+        Wishlist wishlist = new Wishlist();
+        readWishlist(in, wishlist);
+        long head = in.readVarLong();
+        int count = in.readVarUInt();
+
+        Client c = wh.findClient(number);
+        if (c == null) {
+          c = new Client(name, address, number);
+          wh.restoreClient(c);
+        } else {
+          if (!Objects.equals(name, c.getName())) wh.renameClient(c, name);
+          c.setAddress(address);
+        }
+        c.getWishlist().clear();
+        for (int j = 0; j < wishlist.size(); j++) c.getWishlist().add(wishlist.productNumberAt(j), wishlist.quantityAt(j));
+        c.restoreHistory(balance, store, head, count);
+      }
+
+      int queues = in.readVarUInt();
+      for (int i = 0; i < queues; i++) {
+        int productNumber = in.readNumber(Ids.PRODUCT_PREFIX);
+        wh.waitlist().replaceQueue(productNumber, readQueue(in, productNumber));
+      }
+      wh.restoreCheckpointSeq(seq);
+      wh.restoreJournalSeq(journalSeq);
+    }
+  }
+
+  // "<snapshot>.delta.<seq>"
+  static Path deltaFile(Path snapshot, long seq) {
+    return snapshot.resolveSibling(snapshot.getFileName() + DELTA_SUFFIX + seq);
+  }
+
+  // listing the delta segments of snapshot numbered after afterSeq, oldest first
+  static List<Path> deltaFiles(Path snapshot, long afterSeq) throws IOException {
+    Path dir = snapshot.toAbsolutePath().getParent();
+    String prefix = snapshot.getFileName() + DELTA_SUFFIX;
+    TreeMap<Long, Path> found = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*")) {
+      for (Path f : files) {
+        try {
+          long seq = Long.parseLong(f.getFileName().toString().substring(prefix.length()));
+          if (seq > afterSeq) found.put(seq, f);
+        } catch (NumberFormatException e) {
+          // skipping half-written ".tmp" segments
+        }
+      }
+    }
+    return new ArrayList<>(found.values());
+  }
+
+  // removing delta segments up to and including upToSeq (already in the snapshot)
+  static void deleteDeltas(Path snapshot, long upToSeq) throws IOException {
+    for (Path f : deltaFiles(snapshot, 0)) {
+      String name = f.getFileName().toString();
+      if (Long.parseLong(name.substring(name.lastIndexOf('.') + 1)) <= upToSeq) Files.deleteIfExists(f);
+    }
+  }
+
+  // buffered primitive writer over a channel
+  static final class Writer {
+    private final FileChannel ch;
+    private final ByteBuffer buf;
+
+    Writer(FileChannel ch) { this(ch, BUFFER_SIZE); }
+
+    Writer(FileChannel ch, int bufferSize) {
+      this.ch = ch;
+      this.buf = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    void writeInt(int v) throws IOException { ensure(4); buf.putInt(v); }
+
+    // unsigned LEB128
+    void writeVarUInt(int v) throws IOException {
+      if (v < 0) throw new IOException("negative count " + v);
+      writeVarLong(v);
+    }
+
+    // zig-zag so small negatives stay short
+    void writeVarInt(int v) throws IOException { writeVarLong(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL); }
+
+    // an amount of money in cents, zig-zagged like writeVarInt
+    void writeCents(long cents) throws IOException { writeVarLong((cents << 1) ^ (cents >> 63)); }
+
+    void writeVarLong(long v) throws IOException {
+      ensure(10);
+      while ((v & ~0x7FL) != 0) {
+        buf.put((byte) ((v & 0x7F) | 0x80));
+        v >>>= 7;
+      }
+      buf.put((byte) v);
+    }
+
+    void writeString(String s) throws IOException {
+      if (s == null) { writeVarUInt(0); return; }
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeVarUInt(bytes.length + 1);
+      int off = 0;
+      while (off < bytes.length) {
+        if (!buf.hasRemaining()) drain();
+        int n = Math.min(buf.remaining(), bytes.length - off);
+        buf.put(bytes, off, n);
+        off += n;
+      }
+    }
+
+    // client 12 / product 7 -> prefix letter ('C'/'P') + varint number
+    void writeId(char prefix, int number) throws IOException {
+      ensure(1);
+      buf.put((byte) prefix);
+      writeVarUInt(number);
+    }
+
+    void flush() throws IOException { drain(); }
+
+    private void ensure(int n) throws IOException {
+      if (buf.remaining() < n) drain();
+    }
+
+    private void drain() throws IOException {
+      buf.flip();
+      while (buf.hasRemaining()) ch.write(buf);
+      buf.clear();
+    }
+  }
+
+  // buffered primitive reader over a channel
+  static final class Reader {
+    private final FileChannel ch;
+    private final ByteBuffer buf;
+    // next absolute file offset to read, or -1 to read at the channel's own position
+    private long position;
+
+    Reader(FileChannel ch) {
+      this.ch = ch;
+      this.buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      this.position = -1;
+      buf.flip(); // starting empty
+    }
+
+    // reading from offset on with positional reads, safe alongside other readers and appends
+    Reader(FileChannel ch, long offset, int bufferSize) {
+      this.ch = ch;
+      this.buf = ByteBuffer.allocate(bufferSize);
+      this.position = offset;
+      buf.flip();
+    }
+
+    int readInt() throws IOException { require(4); return buf.getInt(); }
+
+    int readVarUInt() throws IOException {
+      long v = readVarLong();
+      if (v < 0 || v > Integer.MAX_VALUE) throw new IOException("corrupt varint " + v);
+      return (int) v;
+    }
+
+    int readVarInt() throws IOException {
+      int v = (int) readVarLong();
+      return (v >>> 1) ^ -(v & 1);
+    }
+
+    long readCents() throws IOException {
+      long v = readVarLong();
+      return (v >>> 1) ^ -(v & 1);
+    }
+
+    long readVarLong() throws IOException {
+      long v = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        require(1);
+        byte b = buf.get();
+        v |= (long) (b & 0x7F) << shift;
+        if (b >= 0) return v;
+      }
+      throw new IOException("corrupt varint");
+    }
+
+    String readString() throws IOException {
+      int len = readVarUInt();
+      if (len == 0) return null;
+      byte[] bytes = new byte[len - 1];
+      int off = 0;
+      while (off < bytes.length) {
+        if (!buf.hasRemaining()) fill();
+        int n = Math.min(buf.remaining(), bytes.length - off);
+        buf.get(bytes, off, n);
+        off += n;
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // number of an id written by writeId
+    int readNumber(char prefix) throws IOException {
+      require(1);
+      byte tag = buf.get();
+      if (tag == prefix) return readVarUInt();
+      throw new IOException("Expected a " + prefix + " id, found tag " + tag);
+    }
+
+    private void require(int n) throws IOException {
+      while (buf.remaining() < n) fill();
+    }
+
+    private void fill() throws IOException {
+      buf.compact();
+      int read = (position < 0) ? ch.read(buf) : ch.read(buf, position);
+      if (read > 0 && position >= 0) position += read;
+      buf.flip();
+      if (read < 0) throw new EOFException("truncated warehouse snapshot");
+    }
+  }
+}
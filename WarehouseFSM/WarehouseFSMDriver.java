@@ -1,11 +1,65 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 public class WarehouseFSMDriver {
+    // how often GROUP/ASYNC journaling flushes to disk
+    private static final long JOURNAL_FLUSH_MILLIS = 5;
+    // how often changes are checkpointed as a delta, and how many deltas before compacting
+    private static final long CHECKPOINT_MILLIS = 60_000;
+    private static final int COMPACT_EVERY = 10;
+
     public static void main(String[] args) {
 
-        // creating shared warehouse backend instance
+        // optional snapshot file (journal kept next to it as <file>.log) and durability mode
+        Path snapshot = (args.length > 0) ? Paths.get(args[0]) : null;
+        OperationLog.Durability durability = OperationLog.Durability.GROUP;
+        if (args.length > 1) {
+            try {
+                durability = OperationLog.Durability.valueOf(args[1].trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown durability " + args[1] + " (use SYNC, GROUP or ASYNC).");
+                return;
+            }
+        }
+
+        // creating shared warehouse backend instance, or recovering the saved one
         Warehouse warehouse = Warehouse.instance();
+        Checkpointer checkpointer = null;
+        if (snapshot != null) {
+            try {
+                warehouse = Warehouse.recover(snapshot, journalFor(snapshot), durability, JOURNAL_FLUSH_MILLIS);
+                System.out.println("Loaded warehouse data from " + snapshot);
+            } catch (IOException e) {
+                System.out.println("Could not load " + snapshot + ": " + e.getMessage());
+                return;
+            }
+            checkpointer = new Checkpointer(warehouse, snapshot);
+            checkpointer.start(CHECKPOINT_MILLIS, COMPACT_EVERY);
+        }
 
         // wiring FSM context with warehouse and starting main loop
         Context context = new Context(warehouse);
         context.run();
+
+        if (snapshot != null) {
+            try {
+                checkpointer.close();
+            } catch (IOException e) {
+                // the save below still writes everything
+                System.out.println("Background checkpoint failed: " + e.getMessage());
+            }
+            try {
+                warehouse.save(snapshot);
+                warehouse.closeJournal();
+                System.out.println("Saved warehouse data to " + snapshot);
+            } catch (IOException e) {
+                System.out.println("Could not save " + snapshot + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static Path journalFor(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".log");
     }
 }
@@ -1,41 +1,148 @@
 import java.io.Serializable;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
-// storing wishlist items per client (productId -> qty)
+// storing wishlist items per client (product number -> qty), in the order first added;
+// "P12" is kept as the int 12, so a wishlist is a few int arrays and no per-item objects
 public class Wishlist implements Serializable {
-  private static final long serialVersionUID = 1L;
+  private static final long serialVersionUID = 2L;
 
-  private final Map<String, Integer> items = new LinkedHashMap<>();
+  private static final int[] NONE = new int[0];
+  private static final int INITIAL_CAPACITY = 4;
 
-  // adding product to wishlist
-  public void add(String productId, int qty) {
-    if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
-    items.merge(productId, qty, Integer::sum);
+  // visiting one wishlist line; nothing is copied or boxed
+  public interface ItemVisitor {
+    void visit(int productNumber, int qty);
   }
 
-  // getting wishlist items as objects
-  public List<WishlistItem> getItems() {
-    List<WishlistItem> out = new LinkedList<>();
-    for (Map.Entry<String,Integer> e : items.entrySet()) {
-      out.add(new WishlistItem(e.getKey(), e.getValue()));
+  // lines in insertion order, positions 0..size-1
+  private int[] numbers = NONE;
+  private int[] qtys = NONE;
+  private int size;
+  // open addressing with linear probing: slot holds position + 1, 0 = free; length is a power of two
+  private int[] index = NONE;
+
+  // adding qty of product number to wishlist
+  public void add(int productNumber, int qty) {
+    if (productNumber <= 0) throw new IllegalArgumentException("Bad product number " + productNumber);
+    if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
+    int pos = find(productNumber);
+    if (pos >= 0) {
+      qtys[pos] = Math.addExact(qtys[pos], qty);
+      return;
+    }
+    if (size == numbers.length) {
+      int cap = Math.max(INITIAL_CAPACITY, size * 2);
+      numbers = Arrays.copyOf(numbers, cap);
+      qtys = Arrays.copyOf(qtys, cap);
     }
-    return out;
+    numbers[size] = productNumber;
+    qtys[size] = qty;
+    size++;
+    if (size * 2 > index.length) reindex(Math.max(INITIAL_CAPACITY * 2, index.length * 2));
+    else insert(size - 1);
   }
 
+  // visiting every line in insertion order
+  public void forEach(ItemVisitor visitor) {
+    for (int i = 0; i < size; i++) visitor.visit(numbers[i], qtys[i]);
+  }
+
+  // counting lines
+  public int size() { return size; }
+
+  // reading line i (insertion order)
+  public int productNumberAt(int i) { return numbers[checkPosition(i)]; }
+  public int quantityAt(int i) { return qtys[checkPosition(i)]; }
+
   // getting quantity for product
-  public int getQuantity(String productId) { return items.getOrDefault(productId, 0); }
+  public int getQuantity(int productNumber) {
+    int pos = find(productNumber);
+    return (pos < 0) ? 0 : qtys[pos];
+  }
 
   // checking emptiness
-  public boolean isEmpty() { return items.isEmpty(); }
+  public boolean isEmpty() { return size == 0; }
+
+  // taking qty of product off the wishlist, dropping it once nothing is left
+  public void subtract(int productNumber, int qty) {
+    int pos = find(productNumber);
+    if (pos < 0) return;
+    if (qtys[pos] > qty) qtys[pos] -= qty;
+    else removeAt(pos);
+  }
 
   // removing product from wishlist
-  public void remove(String productId) { items.remove(productId); }
+  public void remove(int productNumber) {
+    int pos = find(productNumber);
+    if (pos >= 0) removeAt(pos);
+  }
 
   // clearing wishlist
-  public void clear() { items.clear(); }
+  public void clear() {
+    size = 0;
+    Arrays.fill(index, 0);
+  }
+
+  // handing every line to a new wishlist and leaving this one empty, without copying
+  Wishlist take() {
+    Wishlist taken = new Wishlist();
+    taken.numbers = numbers;
+    taken.qtys = qtys;
+    taken.size = size;
+    taken.index = index;
+    numbers = qtys = index = NONE;
+    size = 0;
+    return taken;
+  }
 
-  @Override public String toString() { return items.toString(); }
+  // position of product number, or -1
+  private int find(int productNumber) {
+    if (index.length == 0) return -1;
+    int mask = index.length - 1;
+    for (int h = hash(productNumber) & mask; ; h = (h + 1) & mask) {
+      int slot = index[h];
+      if (slot == 0) return -1;
+      if (numbers[slot - 1] == productNumber) return slot - 1;
+    }
+  }
+
+  private void insert(int pos) {
+    int mask = index.length - 1;
+    int h = hash(numbers[pos]) & mask;
+    while (index[h] != 0) h = (h + 1) & mask;
+    index[h] = pos + 1;
+  }
+
+  private void reindex(int capacity) {
+    index = new int[capacity];
+    for (int i = 0; i < size; i++) insert(i);
+  }
+
+  // closing the gap keeps insertion order; wishlists are short, so re-indexing is cheap
+  private void removeAt(int pos) {
+    System.arraycopy(numbers, pos + 1, numbers, pos, size - pos - 1);
+    System.arraycopy(qtys, pos + 1, qtys, pos, size - pos - 1);
+    size--;
+    Arrays.fill(index, 0);
+    for (int i = 0; i < size; i++) insert(i);
+  }
+
+  private int checkPosition(int i) {
+    if (i < 0 || i >= size) throw new IndexOutOfBoundsException("wishlist line " + i);
+    return i;
+  }
+
+  private static int hash(int n) {
+    int h = n * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  @Override public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) sb.append(", ");
+      sb.append(Ids.product(numbers[i])).append('=').append(qtys[i]);
+    }
+    return sb.append('}').toString();
+  }
 }
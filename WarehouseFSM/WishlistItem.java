@@ -1,17 +1,17 @@
 import java.io.Serializable;
 
 public class WishlistItem implements Serializable {
-  private static final long serialVersionUID = 1L;
+  private static final long serialVersionUID = 2L;
 
-  private final String productId;
+  private final int productNumber;
   private int qty;
 
-  public WishlistItem(String productId, int qty) {
+  public WishlistItem(int productNumber, int qty) {
     if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
-    this.productId = productId; this.qty = qty;
+    this.productNumber = productNumber; this.qty = qty;
   }
 
-  public String getProductId() { return productId; }
+  public int getProductNumber() { return productNumber; }
   public int getQty() { return qty; }
   public void setQty(int qty) {
     if (qty <= 0) throw new IllegalArgumentException("qty must be > 0");
@@ -19,8 +19,8 @@ public class WishlistItem implements Serializable {
   }
 
   @Override public String toString() {
-    Product p = ProductList.instance().search(productId);
+    Product p = ProductList.instance().findByNumber(productNumber);
     String name = (p != null ? p.getName() : "?");
-    return "WishlistItem{" + name + " " + productId + " x " + qty + "}";
+    return "WishlistItem{" + name + " " + Ids.product(productNumber) + " x " + qty + "}";
   }
 }
@@ -0,0 +1,79 @@
+import java.util.Random;
+
+/**
+ * Shipments against the same waitlists under each allocation policy:
+ *
+ *   units allocated per shipment, and shipments received per second
+ *   stock conserved: received = stock left + units allocated
+ *   FIFO_PARTIAL allocates at least as much as any other policy (it only stops when
+ *   stock or waiters run out)
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out AllocationPolicyBenchmark [products] [waiters per product] [shipments]
+ * Exits with an AssertionError on a broken invariant.
+ */
+public class AllocationPolicyBenchmark {
+
+  public static void main(String[] args) {
+    int products = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+    int waiters = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+    int shipments = (args.length > 2) ? Integer.parseInt(args[2]) : 20_000;
+
+    long[] units = new long[AllocationPolicy.values().length];
+    for (int round = 1; round <= 2; round++) {
+      for (AllocationPolicy policy : AllocationPolicy.values()) {
+        units[policy.ordinal()] = run(policy, products, waiters, shipments, round == 2);
+      }
+    }
+    long partial = units[AllocationPolicy.FIFO_PARTIAL.ordinal()];
+    for (AllocationPolicy policy : AllocationPolicy.values()) {
+      check(units[policy.ordinal()] <= partial, policy + " allocated " + units[policy.ordinal()] + " units, more than FIFO_PARTIAL's " + partial);
+    }
+    System.out.println("AllocationPolicyBenchmark passed");
+  }
+
+  // same seed for every policy, so each sees the same waitlists and shipments; returns units allocated
+  private static long run(AllocationPolicy policy, int products, int waiters, int shipments, boolean report) {
+    Random rnd = new Random(7);
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    int[] numbers = new int[products];
+    for (int i = 0; i < products; i++) {
+      numbers[i] = wh.addProduct("p" + i, 100, 0).getNumber();
+      wh.setAllocationPolicy(numbers[i], policy);
+    }
+    int clients = Math.max(1, waiters / 4);
+    for (int i = 0; i < clients; i++) wh.addClient("c" + i, "addr");
+    // out of stock, so every order line lands on the waitlist
+    for (int i = 0; i < products * waiters; i++) {
+      int c = 1 + rnd.nextInt(clients);
+      wh.addToWishlist(c, numbers[rnd.nextInt(products)], 1 + rnd.nextInt(rnd.nextBoolean() ? 3 : 12));
+      wh.placeOrderFromWishlist(c);
+    }
+
+    long received = 0;
+    long allocated = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < shipments; i++) {
+      int p = numbers[rnd.nextInt(products)];
+      int qty = 1 + rnd.nextInt(10);
+      int before = wh.findProduct(p).getStockQuantity();
+      wh.receiveShipment(p, qty);
+      received += qty;
+      allocated += before + qty - wh.findProduct(p).getStockQuantity();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    long left = 0;
+    for (int p : numbers) left += wh.findProduct(p).getStockQuantity();
+    check(received == left + allocated, policy + ": received " + received + " != stock " + left + " + allocated " + allocated);
+    if (report) {
+      System.out.printf("%-12s %.2f units allocated per shipment, %.0f shipments/s, %d units idle in stock%n",
+          policy, (double) allocated / shipments, shipments / seconds, left);
+    }
+    return allocated;
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
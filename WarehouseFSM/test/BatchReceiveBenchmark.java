@@ -0,0 +1,87 @@
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A truck of many SKU lines received in one batch against looping over the
+ * single-product call, on two warehouses with the same waitlists:
+ *
+ *   receiveShipments(truck) against receiveShipment per line: time and invoices created
+ *   both leave the same stock and bill every client the same units and cents
+ *   a batch creates at most one invoice per client
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out BatchReceiveBenchmark [truck lines] [waiters per product] [trucks]
+ * Exits with an AssertionError if the two paths disagree.
+ */
+public class BatchReceiveBenchmark {
+  private static final int CLIENTS = 2000;
+
+  public static void main(String[] args) {
+    int lines = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+    int waiters = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+    int trucks = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+    Warehouse batched = waitlisted(lines, waiters);
+    Warehouse looped = waitlisted(lines, waiters);
+    Random rnd = new Random(3);
+    long batchNanos = 0;
+    long loopNanos = 0;
+    long batchInvoices = 0;
+    long loopInvoices = 0;
+    for (int t = 0; t < trucks; t++) {
+      Map<Integer, Integer> truck = new LinkedHashMap<>();
+      for (int p = 1; p <= lines; p++) truck.put(p, 1 + rnd.nextInt(8));
+
+      long start = System.nanoTime();
+      List<Invoice> invoices = batched.receiveShipments(truck);
+      batchNanos += System.nanoTime() - start;
+      batchInvoices += invoices.size();
+      Set<Integer> billed = new HashSet<>();
+      for (Invoice inv : invoices) check(billed.add(inv.getClientNumber()), "two invoices for " + Ids.client(inv.getClientNumber()) + " in one batch");
+
+      long before = invoiceCount(looped);
+      start = System.nanoTime();
+      for (Map.Entry<Integer, Integer> line : truck.entrySet()) looped.receiveShipment(line.getKey(), line.getValue());
+      loopNanos += System.nanoTime() - start;
+      loopInvoices += invoiceCount(looped) - before;
+    }
+
+    for (int p = 1; p <= lines; p++) {
+      check(batched.findProduct(p).getStockQuantity() == looped.findProduct(p).getStockQuantity(), "stock of " + Ids.product(p) + " differs");
+    }
+    for (int c = 1; c <= CLIENTS; c++) {
+      check(batched.findClient(c).getBalanceCents() == looped.findClient(c).getBalanceCents(), "balance of " + Ids.client(c) + " differs");
+    }
+    System.out.printf("%d trucks of %d lines: batch %.1f ms/truck, %d invoices; single calls %.1f ms/truck, %d invoices%n",
+        trucks, lines, batchNanos / 1e6 / trucks, batchInvoices, loopNanos / 1e6 / trucks, loopInvoices);
+    System.out.println("BatchReceiveBenchmark passed");
+  }
+
+  // products out of stock with waiters queued in the same order on every call
+  private static Warehouse waitlisted(int products, int waiters) {
+    Random rnd = new Random(1);
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    for (int i = 0; i < products; i++) wh.addProduct("p" + i, 100 + i % 500, 0);
+    for (int i = 0; i < CLIENTS; i++) wh.addClient("c" + i, "addr");
+    for (int i = 0; i < products * waiters; i++) {
+      int c = 1 + rnd.nextInt(CLIENTS);
+      wh.addToWishlist(c, 1 + rnd.nextInt(products), 1 + rnd.nextInt(4));
+      wh.placeOrderFromWishlist(c);
+    }
+    return wh;
+  }
+
+  private static long invoiceCount(Warehouse wh) {
+    long n = 0;
+    for (int c = 1; c <= CLIENTS; c++) n += wh.findClient(c).getInvoiceCount();
+    return n;
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Recovery checks for delta checkpoints: random runs of adds, orders,
+ * shipments, payments, reservations, renames and price changes, cut by full
+ * saves and delta checkpoints, then a recovery from snapshot plus deltas plus
+ * journal must list clients and products in the same order as the live
+ * warehouse and hold the same state, down to the invoice archive reports read. A concurrent run then saves while a
+ * client keeps wishing and ordering: no snapshot may show fewer units wished
+ * (invoiced plus still on the wishlist) than the one before it.
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out CheckpointRecoveryTest [seeds] [operations per seed]
+ * Exits with an AssertionError on the first seed whose recovery differs.
+ */
+public class CheckpointRecoveryTest {
+
+  public static void main(String[] args) throws Exception {
+    int seeds = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+    int ops = (args.length > 1) ? Integer.parseInt(args[1]) : 3000;
+    for (int seed = 1; seed <= seeds; seed++) run(seed, ops);
+    saveWhileOrdering(2000);
+    System.out.println("CheckpointRecoveryTest passed for " + seeds + " seeds");
+  }
+
+  private static void run(int seed, int ops) throws IOException {
+    Random rnd = new Random(seed);
+    Path dir = Files.createTempDirectory("recovery");
+    Path snapshot = dir.resolve("warehouse.bin");
+    Path journal = dir.resolve("warehouse.log");
+    try {
+      Warehouse wh = Warehouse.recover(snapshot, journal, OperationLog.Durability.ASYNC, 1);
+      List<Integer> clients = new ArrayList<>();
+      List<Integer> products = new ArrayList<>();
+      for (int i = 0; i < ops; i++) {
+        int op = rnd.nextInt(100);
+        if (op < 10 || products.isEmpty() || clients.isEmpty()) {
+          products.add(wh.addProduct("p" + i, 1 + rnd.nextInt(5000), rnd.nextInt(20)).getNumber());
+          clients.add(wh.addClient("c" + i, "addr " + i).getNumber());
+        } else if (op < 50) {
+          int c = pick(rnd, clients);
+          for (int j = 1 + rnd.nextInt(3); j > 0; j--) wh.addToWishlist(c, pick(rnd, products), 1 + rnd.nextInt(5));
+          if (rnd.nextBoolean()) wh.placeOrderFromWishlist(c);
+        } else if (op < 75) {
+          wh.receiveShipment(pick(rnd, products), 1 + rnd.nextInt(10));
+        } else if (op < 82) {
+          wh.recordPayment(pick(rnd, clients), 1 + rnd.nextInt(3000));
+        } else if (op < 90) {
+          // reserving, then sometimes selling or handing back part of what is held
+          int p = pick(rnd, products);
+          wh.reserve(p, 1 + rnd.nextInt(4));
+          int held = wh.findProduct(p).getReservedQuantity();
+          if (held > 0 && rnd.nextBoolean()) wh.commitReservation(p, 1 + rnd.nextInt(held));
+          else if (held > 0 && rnd.nextBoolean()) wh.releaseReservation(p, 1 + rnd.nextInt(held));
+        } else if (op < 91) {
+          wh.renameProduct(pick(rnd, products), "renamed" + i);
+        } else if (op < 92) {
+          wh.setProductPrice(pick(rnd, products), 1 + rnd.nextInt(5000));
+        } else if (op < 93) {
+          wh.setAllocationPolicy(pick(rnd, products), AllocationPolicy.values()[rnd.nextInt(AllocationPolicy.values().length)]);
+        } else if (op < 99) {
+          wh.checkpoint(snapshot);
+        } else {
+          wh.save(snapshot);
+        }
+      }
+      String live = dump(wh);
+      wh.closeJournal();
+
+      Warehouse recovered = Warehouse.recover(snapshot, journal, OperationLog.Durability.ASYNC, 1);
+      String back = dump(recovered);
+      recovered.closeJournal();
+      if (!live.equals(back)) {
+        throw new AssertionError("seed " + seed + ": recovery differs at " + firstDifference(live, back));
+      }
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+      }
+      Files.delete(dir);
+    }
+  }
+
+  // one thread wishes one unit and orders it, over and over, while this one saves and reloads
+  private static void saveWhileOrdering(long millis) throws Exception {
+    Path dir = Files.createTempDirectory("recovery");
+    Path snapshot = dir.resolve("warehouse.bin");
+    try {
+      Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+      int c = wh.addClient("c", "addr").getNumber();
+      int stock = Integer.MAX_VALUE / 2;
+      int p = wh.addProduct("p", 100, stock).getNumber();
+      AtomicBoolean stop = new AtomicBoolean();
+      Thread orders = new Thread(() -> {
+        while (!stop.get()) {
+          wh.addToWishlist(c, p, 1);
+          wh.placeOrderFromWishlist(c);
+        }
+      });
+      orders.start();
+      long seen = 0;
+      int saves = 0;
+      try {
+        for (long end = System.currentTimeMillis() + millis; System.currentTimeMillis() < end; saves++) {
+          if (saves % 50 == 0) wh.save(snapshot);
+          else wh.checkpoint(snapshot);
+          Warehouse saved = Warehouse.load(snapshot);
+          // every unit wished is either still on the wishlist or sold out of stock
+          long wished = saved.findClient(c).getWishlist().getQuantity(p)
+              + (stock - saved.findProduct(p).getStockQuantity());
+          if (wished < seen) throw new AssertionError("snapshot " + saves + " lost wished units: " + wished + " after " + seen);
+          seen = wished;
+        }
+      } finally {
+        stop.set(true);
+        orders.join();
+      }
+      System.out.println("saveWhileOrdering: " + saves + " snapshots, " + seen + " units wished by the last");
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+      }
+      Files.delete(dir);
+    }
+  }
+
+  // everything a user can see, in listing order, plus the reporting archive
+  static String dump(Warehouse wh) {
+    StringBuilder out = new StringBuilder();
+    for (Iterator<Product> it = wh.getProducts(); it.hasNext(); ) {
+      Product p = it.next();
+      out.append(p.getId()).append(' ').append(p.getName()).append(' ').append(p.getPriceCents())
+          .append(' ').append(p.getStockQuantity()).append('/').append(p.getReservedQuantity())
+          .append(' ').append(p.getAllocationPolicy()).append(" waiting");
+      for (WaitlistItem wi : wh.getProductWaitlist(p.getNumber())) {
+        out.append(' ').append(Ids.client(wi.getClientNumber())).append('x').append(wi.getQty());
+      }
+      out.append('\n');
+    }
+    for (Iterator<Client> it = wh.getClients(); it.hasNext(); ) {
+      Client c = it.next();
+      out.append(c.getId()).append(' ').append(c.getName()).append(' ').append(c.getAddress())
+          .append(' ').append(c.getBalanceCents()).append(" invoices ").append(c.getInvoiceCount())
+          .append(" wishlist");
+      for (WishlistItem item : wh.getWishlist(c.getNumber())) {
+        out.append(' ').append(Ids.product(item.getProductNumber())).append('x').append(item.getQty());
+      }
+      out.append('\n');
+    }
+    InvoiceArchive.Query archived = wh.invoiceArchive().query();
+    out.append("archive ").append(archived.lines()).append(" lines ").append(archived.revenueByClient())
+        .append(' ').append(archived.unitsByProduct()).append('\n');
+    return out.toString();
+  }
+
+  private static int pick(Random rnd, List<Integer> numbers) {
+    return numbers.get(rnd.nextInt(numbers.size()));
+  }
+
+  private static String firstDifference(String a, String b) {
+    String[] x = a.split("\n");
+    String[] y = b.split("\n");
+    for (int i = 0; i < Math.min(x.length, y.length); i++) {
+      if (!x[i].equals(y[i])) return "line " + (i + 1) + ":\n  live      " + x[i] + "\n  recovered " + y[i];
+    }
+    return "line count " + x.length + " vs " + y.length;
+  }
+}
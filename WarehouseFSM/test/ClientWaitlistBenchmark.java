@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * One client's waitlist through the per-client index, against the old walk
+ * over every product queue, with entries spread over many clients:
+ *
+ *   Waitlist.getClientWaitlist (reverse index) against scanning all queues
+ *   the index holds exactly the client's queued entries after adds, fills and removals
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out ClientWaitlistBenchmark [entries] [clients] [products]
+ * Prints client views per second for each; exits with an AssertionError if they disagree.
+ */
+public class ClientWaitlistBenchmark {
+
+  public static void main(String[] args) {
+    int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+    int clients = (args.length > 1) ? Integer.parseInt(args[1]) : 100_000;
+    int products = (args.length > 2) ? Integer.parseInt(args[2]) : 10_000;
+
+    Random rnd = new Random(1);
+    Waitlist waitlist = new Waitlist();
+    for (int i = 0; i < entries; i++) waitlist.enqueue(1 + rnd.nextInt(products), 1 + rnd.nextInt(5), 1 + rnd.nextInt(clients));
+
+    // shipments draining some queues, partial fills and cancellations, as receiveShipment and orders do
+    for (int i = 0; i < products / 10; i++) {
+      int p = 1 + rnd.nextInt(products);
+      for (int k = rnd.nextInt(4); k > 0; k--) waitlist.removeFirst(p);
+      WaitlistItem head = waitlist.peekFirst(p);
+      if (head != null && head.getQty() > 1) waitlist.fill(head, 1);
+      for (WaitlistItem wi : new ArrayList<>(waitlist.queueFor(p))) {
+        if (rnd.nextInt(8) == 0) waitlist.remove(wi);
+      }
+    }
+    for (int i = 0; i < 1000; i++) {
+      int c = 1 + rnd.nextInt(clients);
+      check(new HashSet<>(waitlist.getClientWaitlist(c)).equals(new HashSet<>(scanFor(waitlist, c))),
+          "index and scan disagree for " + Ids.client(c));
+    }
+
+    int indexedViews = 1_000_000;
+    int scannedViews = 20;
+    for (int round = 1; round <= 3; round++) {
+      long start = System.nanoTime();
+      long sum = 0;
+      for (int i = 0; i < indexedViews; i++) sum += waitlist.getClientWaitlist(1 + rnd.nextInt(clients)).size();
+      double indexedRate = indexedViews / seconds(start);
+
+      start = System.nanoTime();
+      for (int i = 0; i < scannedViews; i++) sum += scanFor(waitlist, 1 + rnd.nextInt(clients)).size();
+      double scannedRate = scannedViews / seconds(start);
+
+      System.out.printf("round %d: %d entries over %d clients, indexed %.0f views/s, scan %.1f views/s (%.0fx) [%d]%n",
+          round, entries, clients, indexedRate, scannedRate, indexedRate / scannedRate, sum);
+    }
+  }
+
+  // the old getClientWaitlist: every item of every product queue, matched by client
+  private static List<WaitlistItem> scanFor(Waitlist waitlist, int clientNumber) {
+    List<WaitlistItem> out = new ArrayList<>();
+    for (Iterator<Map.Entry<Integer, Collection<WaitlistItem>>> it = waitlist.entries(); it.hasNext(); ) {
+      for (WaitlistItem wi : it.next().getValue()) {
+        if (wi.getClientNumber() == clientNumber) out.add(wi);
+      }
+    }
+    return out;
+  }
+
+  private static double seconds(long startNanos) { return (System.nanoTime() - startNanos) / 1e9; }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
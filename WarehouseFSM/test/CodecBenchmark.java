@@ -0,0 +1,100 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * The binary snapshot codec against Java serialization of the same lists, on a
+ * warehouse with many clients, each with a wishlist and some invoices:
+ *
+ *   write time, load time and bytes on disk for each
+ *   both give back every client with the same balance
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out CodecBenchmark [clients] [products]
+ * (1M clients wants a few GB of heap: java -Xmx4g ...). Exits with an AssertionError if a load differs.
+ */
+public class CodecBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+    int products = (args.length > 1) ? Integer.parseInt(args[1]) : 10_000;
+
+    Random rnd = new Random(1);
+    ClientList clientList = new ClientList();
+    ProductList productList = new ProductList();
+    Warehouse wh = new Warehouse(clientList, productList);
+    for (int i = 0; i < products; i++) wh.addProduct("product " + i, 100 + rnd.nextInt(10_000), 1_000_000);
+    for (int i = 0; i < clients; i++) {
+      int c = wh.addClient("client " + i, i + " Main Street").getNumber();
+      for (int k = rnd.nextInt(4); k > 0; k--) wh.addToWishlist(c, 1 + rnd.nextInt(products), 1 + rnd.nextInt(5));
+      if (rnd.nextBoolean()) wh.placeOrderFromWishlist(c);
+      for (int k = rnd.nextInt(3); k > 0; k--) wh.addToWishlist(c, 1 + rnd.nextInt(products), 1 + rnd.nextInt(5));
+    }
+    long balances = balanceSum(wh.getClients());
+
+    Path dir = Files.createTempDirectory("codec");
+    try {
+      // serialized first: a codec save moves invoice history out of the clients
+      Path serialized = dir.resolve("warehouse.ser");
+      long start = System.nanoTime();
+      try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(serialized), 1 << 16))) {
+        out.writeObject(clientList);
+        out.writeObject(productList);
+        out.writeObject(wh.waitlist());
+      }
+      double serWrite = seconds(start);
+      start = System.nanoTime();
+      ClientList serClients;
+      try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(serialized), 1 << 16))) {
+        serClients = (ClientList) in.readObject();
+        in.readObject();
+        in.readObject();
+      }
+      double serLoad = seconds(start);
+      check(serClients.size() == clients && balanceSum(serClients.getClients()) == balances, "Java serialization lost clients");
+
+      Path snapshot = dir.resolve("warehouse.bin");
+      start = System.nanoTime();
+      wh.save(snapshot);
+      double codecWrite = seconds(start);
+      start = System.nanoTime();
+      Warehouse loaded = Warehouse.load(snapshot);
+      double codecLoad = seconds(start);
+      check(loaded.clientCount() == clients && balanceSum(loaded.getClients()) == balances, "codec lost clients");
+
+      long codecBytes = 0;
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path f : (Iterable<Path>) files::iterator) {
+          if (f.getFileName().toString().startsWith("warehouse.bin")) codecBytes += Files.size(f);
+        }
+      }
+      long serBytes = Files.size(serialized);
+      System.out.printf("%d clients: codec write %.2f s, load %.2f s, %.1f MB; serialization write %.2f s, load %.2f s, %.1f MB%n",
+          clients, codecWrite, codecLoad, codecBytes / 1e6, serWrite, serLoad, serBytes / 1e6);
+      System.out.println("CodecBenchmark passed");
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+      }
+      Files.delete(dir);
+    }
+  }
+
+  private static long balanceSum(Iterator<Client> clients) {
+    long sum = 0;
+    while (clients.hasNext()) sum = Money.plus(sum, clients.next().getBalanceCents());
+    return sum;
+  }
+
+  private static double seconds(long startNanos) { return (System.nanoTime() - startNanos) / 1e9; }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
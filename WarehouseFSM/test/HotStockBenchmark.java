@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * One hot SKU hammered by contended threads, Product's CAS counters against a
+ * synchronized counter doing the same work:
+ *
+ *   sell one unit, restock it, reserve one unit and hand it back, per operation
+ *   operations per second at 1, 2, 4 ... threads for each
+ *   no unit lost or created: stock and reservations end where they started
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out HotStockBenchmark [max threads] [ops per thread]
+ * Exits with an AssertionError if a counter drifts.
+ */
+public class HotStockBenchmark {
+  private static final int STOCK = 1000;
+
+  // the stock operations both contenders provide
+  private interface Stock {
+    int fulfill(int qty);
+    void receive(int qty);
+    boolean tryReserve(int qty);
+    void release(int qty);
+    int stock();
+    int reserved();
+  }
+
+  // Product's lock-free counters
+  private static final class CasStock implements Stock {
+    final Product p = new Product(1, "hot", 100, STOCK);
+    public int fulfill(int qty) { return p.fulfill(qty); }
+    public void receive(int qty) { p.receive(qty); }
+    public boolean tryReserve(int qty) { return p.tryReserve(qty); }
+    public void release(int qty) { p.release(qty); }
+    public int stock() { return p.getStockQuantity(); }
+    public int reserved() { return p.getReservedQuantity(); }
+  }
+
+  // the baseline: plain ints behind one monitor
+  private static final class SynchronizedStock implements Stock {
+    private int stock = STOCK;
+    private int reserved;
+    public synchronized int fulfill(int qty) {
+      int take = Math.min(stock, qty);
+      stock -= take;
+      return take;
+    }
+    public synchronized void receive(int qty) { stock += qty; }
+    public synchronized boolean tryReserve(int qty) {
+      if (stock < qty) return false;
+      stock -= qty;
+      reserved += qty;
+      return true;
+    }
+    public synchronized void release(int qty) {
+      reserved -= qty;
+      stock += qty;
+    }
+    public synchronized int stock() { return stock; }
+    public synchronized int reserved() { return reserved; }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+    int ops = (args.length > 1) ? Integer.parseInt(args[1]) : 2_000_000;
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      double cas = run(new CasStock(), threads, ops);
+      double sync = run(new SynchronizedStock(), threads, ops);
+      System.out.printf("%2d threads: CAS %.1f M ops/s, synchronized %.1f M ops/s (%.2fx)%n",
+          threads, cas / 1e6, sync / 1e6, cas / sync);
+    }
+    System.out.println("HotStockBenchmark passed");
+  }
+
+  // returns operations per second
+  private static double run(Stock s, int threads, int ops) throws InterruptedException {
+    CountDownLatch go = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread w = new Thread(() -> {
+        try {
+          go.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < ops; i++) {
+          int sold = s.fulfill(1);
+          if (sold > 0) s.receive(sold);
+          if (s.tryReserve(1)) s.release(1);
+        }
+      });
+      workers.add(w);
+      w.start();
+    }
+    long start = System.nanoTime();
+    go.countDown();
+    for (Thread w : workers) w.join();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    check(s.stock() == STOCK, s.getClass().getSimpleName() + " ended with stock " + s.stock());
+    check(s.reserved() == 0, s.getClass().getSimpleName() + " ended with " + s.reserved() + " reserved");
+    return (double) threads * ops / seconds;
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * IdAllocator's thread-local blocks against one shared AtomicInteger, every
+ * thread taking numbers as fast as it can:
+ *
+ *   numbers per second at 1, 2, 4 ... threads for each
+ *   each thread's numbers keep increasing, and the high-water mark covers every number handed out
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out IdAllocatorBenchmark [max threads] [numbers per thread] [max block]
+ * Exits with an AssertionError if an allocator hands out fewer numbers than it was asked for.
+ */
+public class IdAllocatorBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+    int perThread = (args.length > 1) ? Integer.parseInt(args[1]) : 10_000_000;
+    int maxBlock = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      IdAllocator ids = new IdAllocator(maxBlock);
+      double blocks = run(ids::next, threads, perThread);
+      check(ids.highWater() - 1 >= (long) threads * perThread,
+          "high water " + ids.highWater() + " below the " + (long) threads * perThread + " numbers handed out");
+
+      AtomicInteger counter = new AtomicInteger();
+      double atomic = run(() -> counter.incrementAndGet(), threads, perThread);
+      check(counter.get() == threads * perThread, "AtomicInteger ended at " + counter.get());
+
+      System.out.printf("%2d threads: IdAllocator %.1f M numbers/s, AtomicInteger %.1f M numbers/s (%.2fx)%n",
+          threads, blocks / 1e6, atomic / 1e6, blocks / atomic);
+    }
+    System.out.println("IdAllocatorBenchmark passed");
+  }
+
+  // returns numbers per second
+  private static double run(IntSupplier next, int threads, int perThread) throws InterruptedException {
+    CountDownLatch go = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread w = new Thread(() -> {
+        try {
+          go.await();
+          int last = 0;
+          for (int i = 0; i < perThread; i++) {
+            int n = next.getAsInt();
+            if (n <= last) throw new AssertionError("number " + n + " after " + last + " on one thread");
+            last = n;
+          }
+        } catch (Throwable e) {
+          synchronized (failures) { failures.add(e); }
+        }
+      });
+      workers.add(w);
+      w.start();
+    }
+    long start = System.nanoTime();
+    go.countDown();
+    for (Thread w : workers) w.join();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    if (!failures.isEmpty()) throw new AssertionError("worker failed", failures.get(0));
+    return (double) threads * perThread / seconds;
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * Uniqueness checks for client and product numbers:
+ *
+ *   an IdAllocator shared by many threads never hands out a number twice
+ *   a new allocator advanced to the saved high-water mark (a restart) never repeats an earlier number
+ *   concurrent addClient/addProduct calls get distinct numbers, and a warehouse
+ *   loaded from its snapshot keeps numbering past every saved client and product
+ *   a single clerk's numbers carry on without a gap after a save and load (C142, then C143)
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out IdUniquenessTest [threads] [numbers per thread]
+ * Exits with an AssertionError on the first duplicate.
+ */
+public class IdUniquenessTest {
+
+  public static void main(String[] args) throws Exception {
+    int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+    int perThread = (args.length > 1) ? Integer.parseInt(args[1]) : 200000;
+    checkAllocator(threads, perThread);
+    checkRestarts(threads, perThread / 10);
+    checkWarehouse(threads, perThread / 100);
+    checkNoGapAfterRestart(142);
+    System.out.println("IdUniquenessTest passed");
+  }
+
+  private static void checkAllocator(int threads, int perThread) throws InterruptedException {
+    IdAllocator ids = new IdAllocator(64);
+    BitSet seen = new BitSet();
+    int taken = allocate(ids, threads, perThread, seen);
+    check(taken == threads * perThread, "handed out " + taken + " distinct numbers, expected " + threads * perThread);
+    check(ids.highWater() > seen.length() - 1, "high water " + ids.highWater() + " not past largest number " + (seen.length() - 1));
+    System.out.println("allocator: " + taken + " numbers from " + threads + " threads, high water " + ids.highWater());
+  }
+
+  // several runs, each a fresh allocator restored from the previous run's high-water mark
+  private static void checkRestarts(int threads, int perThread) throws InterruptedException {
+    BitSet seen = new BitSet();
+    int saved = 1;
+    for (int run = 0; run < 5; run++) {
+      IdAllocator ids = new IdAllocator(64);
+      ids.advanceTo(saved);
+      allocate(ids, threads, perThread, seen);
+      saved = ids.highWater();
+    }
+    System.out.println("restarts: 5 runs, " + seen.cardinality() + " numbers, none repeated");
+  }
+
+  // numbers from addClient/addProduct, then again after saving and loading the warehouse
+  private static void checkWarehouse(int threads, int perThread) throws Exception {
+    Path dir = Files.createTempDirectory("ids");
+    Path snapshot = dir.resolve("warehouse.bin");
+    try {
+      Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+      BitSet clients = new BitSet();
+      BitSet products = new BitSet();
+      addConcurrently(wh, threads, perThread, clients, products);
+      wh.save(snapshot);
+
+      Warehouse loaded = Warehouse.load(snapshot);
+      addConcurrently(loaded, threads, perThread, clients, products);
+      check(clients.cardinality() == 2 * threads * perThread, "client numbers repeated across the restart");
+      check(products.cardinality() == 2 * threads * perThread, "product numbers repeated across the restart");
+      check(loaded.clientCount() == 2 * threads * perThread, "clients lost: " + loaded.clientCount());
+      check(loaded.productCount() == 2 * threads * perThread, "products lost: " + loaded.productCount());
+      System.out.println("warehouse: " + clients.cardinality() + " clients, " + products.cardinality()
+          + " products over a save and load, all distinct");
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+      }
+      Files.delete(dir);
+    }
+  }
+
+  // one thread adding clients and products, as the clerk's menu does, across a save and load
+  private static void checkNoGapAfterRestart(int added) throws IOException {
+    Path dir = Files.createTempDirectory("ids");
+    Path snapshot = dir.resolve("warehouse.bin");
+    try {
+      Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+      for (int i = 1; i <= added; i++) {
+        check(wh.addClient("c" + i, "addr").getNumber() == i, "client numbers skipped before " + Ids.client(i));
+        check(wh.addProduct("p" + i, 100, 1).getNumber() == i, "product numbers skipped before " + Ids.product(i));
+      }
+      wh.save(snapshot);
+
+      Warehouse loaded = Warehouse.load(snapshot);
+      Client next = loaded.addClient("next", "addr");
+      check(next.getNumber() == added + 1, Ids.client(added) + " followed by " + next.getId() + " after a restart");
+      Product nextProduct = loaded.addProduct("next", 100, 1);
+      check(nextProduct.getNumber() == added + 1, Ids.product(added) + " followed by " + nextProduct.getId() + " after a restart");
+      System.out.println("restart: " + Ids.client(added) + " followed by " + next.getId());
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+      }
+      Files.delete(dir);
+    }
+  }
+
+  // taking perThread numbers on each thread, recording them in seen; returns how many were new
+  private static int allocate(IdAllocator ids, int threads, int perThread, BitSet seen) throws InterruptedException {
+    int[][] got = new int[threads][perThread];
+    run(threads, t -> {
+      for (int i = 0; i < perThread; i++) got[t][i] = ids.next();
+    });
+    int added = 0;
+    for (int[] numbers : got) {
+      for (int n : numbers) {
+        check(n > 0, "non-positive number " + n);
+        check(!seen.get(n), "number " + n + " handed out twice");
+        seen.set(n);
+        added++;
+      }
+    }
+    return added;
+  }
+
+  private static void addConcurrently(Warehouse wh, int threads, int perThread, BitSet clients, BitSet products)
+      throws InterruptedException {
+    int[][] c = new int[threads][perThread];
+    int[][] p = new int[threads][perThread];
+    run(threads, t -> {
+      for (int i = 0; i < perThread; i++) {
+        c[t][i] = wh.addClient("c" + t + "-" + i, "addr").getNumber();
+        p[t][i] = wh.addProduct("p" + t + "-" + i, 100, 1).getNumber();
+      }
+    });
+    for (int t = 0; t < threads; t++) {
+      for (int i = 0; i < perThread; i++) {
+        check(!clients.get(c[t][i]), Ids.client(c[t][i]) + " handed out twice");
+        clients.set(c[t][i]);
+        check(!products.get(p[t][i]), Ids.product(p[t][i]) + " handed out twice");
+        products.set(p[t][i]);
+      }
+    }
+  }
+
+  private interface Work {
+    void run(int thread) throws Exception;
+  }
+
+  // running work on threads started together; rethrowing the first failure
+  private static void run(int threads, Work work) throws InterruptedException {
+    CountDownLatch go = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      int thread = t;
+      Thread w = new Thread(() -> {
+        try {
+          go.await();
+          work.run(thread);
+        } catch (Throwable e) {
+          synchronized (failures) { failures.add(e); }
+        }
+      });
+      workers.add(w);
+      w.start();
+    }
+    go.countDown();
+    for (Thread w : workers) w.join();
+    if (!failures.isEmpty()) throw new AssertionError("worker failed", failures.get(0));
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,110 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Invoice construction against the old representation (random UUID, Date,
+ * LinkedHashMap of lines keyed "productId#n", double totals), three lines per invoice:
+ *
+ *   bytes allocated per invoice for each
+ *   latency p50 / p99 / max with invoices paced at a fixed rate (100k/s by default),
+ *   measured from each invoice's scheduled time so a stall counts for every invoice behind it
+ *   invoice ids are unique and increasing
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out InvoiceAllocationBenchmark [invoices] [invoices per second]
+ * Exits with an AssertionError if an id repeats or goes backwards.
+ */
+public class InvoiceAllocationBenchmark {
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // keeps the invoices from being optimized away
+  private static volatile long sink;
+
+  // the representation invoices had before: what the baseline allocates
+  private static final class LegacyInvoice {
+    final String id = UUID.randomUUID().toString();
+    final Date date = new Date();
+    final Map<String, double[]> lines = new LinkedHashMap<>();
+    double total;
+
+    void addLine(String productId, int qty, double price) {
+      lines.put(productId + "#" + lines.size(), new double[] {qty, price});
+      total += qty * price;
+    }
+  }
+
+  // one invoice of three lines, returning something that depends on it
+  private interface Maker {
+    long make(int i);
+  }
+
+  public static void main(String[] args) {
+    int invoices = (args.length > 0) ? Integer.parseInt(args[0]) : 500_000;
+    int rate = (args.length > 1) ? Integer.parseInt(args[1]) : 100_000;
+
+    Maker legacy = i -> {
+      LegacyInvoice inv = new LegacyInvoice();
+      for (int k = 0; k < 3; k++) inv.addLine("P" + (1 + (i + k) % 1000), 1 + k, 9.99);
+      return (long) inv.total + inv.id.length();
+    };
+    Maker current = i -> {
+      Invoice inv = new Invoice(1 + i % 1000, 3);
+      for (int k = 0; k < 3; k++) inv.addLine(1 + (i + k) % 1000, "product", 1 + k, 999);
+      return inv.getTotalCents() + inv.getId().length();
+    };
+
+    checkIds(invoices);
+    for (int round = 1; round <= 2; round++) {
+      report("old invoice", legacy, invoices, rate);
+      report("Invoice", current, invoices, rate);
+    }
+    System.out.println("InvoiceAllocationBenchmark passed");
+  }
+
+  // ids decode to strictly increasing numbers, so none repeats
+  private static void checkIds(int invoices) {
+    long last = -1;
+    for (int i = 0; i < invoices; i++) {
+      String id = new Invoice(1).getId();
+      check(id.startsWith("I-"), "unexpected invoice id " + id);
+      long n = Long.parseLong(id.substring(2), 36);
+      check(n > last, "invoice id " + id + " does not follow the one before it");
+      last = n;
+    }
+  }
+
+  private static void report(String name, Maker maker, int invoices, int rate) {
+    long sum = 0;
+    // warm-up, so the measured run is compiled code
+    for (int i = 0; i < invoices; i++) sum += maker.make(i);
+
+    long thread = Thread.currentThread().getId();
+    long before = THREADS.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < invoices; i++) sum += maker.make(i);
+    double bytesPerInvoice = (double) (THREADS.getThreadAllocatedBytes(thread) - before) / invoices;
+
+    long[] latency = new long[invoices];
+    long interval = 1_000_000_000L / rate;
+    long start = System.nanoTime();
+    for (int i = 0; i < invoices; i++) {
+      long due = start + i * interval;
+      while (System.nanoTime() < due) Thread.onSpinWait();
+      sum += maker.make(i);
+      latency[i] = System.nanoTime() - due;
+    }
+    sink = sum;
+    Arrays.sort(latency);
+    System.out.printf("%-11s %.0f bytes/invoice; at %d/s latency p50 %.1f us, p99 %.1f us, max %.1f us%n",
+        name, bytesPerInvoice, rate, latency[invoices / 2] / 1e3, latency[(int) (invoices * 0.99)] / 1e3,
+        latency[invoices - 1] / 1e3);
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
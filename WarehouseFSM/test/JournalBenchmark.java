@@ -0,0 +1,100 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Journaled mutation throughput under each durability mode, with concurrent
+ * callers sharing one operation log:
+ *
+ *   SYNC (fsync per record), GROUP (one fsync per group-commit window) and ASYNC: ops per second
+ *   replaying each journal rebuilds the same balances and wishlists
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out JournalBenchmark [threads] [ops per thread] [group millis]
+ * Exits with an AssertionError if a replay differs.
+ */
+public class JournalBenchmark {
+  private static final int CLIENTS = 64;
+  private static final int PRODUCTS = 64;
+
+  public static void main(String[] args) throws Exception {
+    int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+    int ops = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+    long groupMillis = (args.length > 2) ? Long.parseLong(args[2]) : 2;
+    for (OperationLog.Durability mode : OperationLog.Durability.values()) {
+      double rate = run(mode, threads, ops, groupMillis);
+      System.out.printf("%-5s %d threads: %.0f journaled ops/s%n", mode, threads, rate);
+    }
+    System.out.println("JournalBenchmark passed");
+  }
+
+  // returns ops per second
+  private static double run(OperationLog.Durability mode, int threads, int ops, long groupMillis) throws Exception {
+    Path dir = Files.createTempDirectory("journal");
+    Path snapshot = dir.resolve("warehouse.bin");
+    Path journal = dir.resolve("warehouse.log");
+    try {
+      Warehouse wh = Warehouse.recover(snapshot, journal, mode, groupMillis);
+      for (int i = 0; i < PRODUCTS; i++) wh.addProduct("p" + i, 100 + i, 0);
+      for (int i = 0; i < CLIENTS; i++) wh.addClient("c" + i, "addr");
+
+      CountDownLatch go = new CountDownLatch(1);
+      List<Thread> workers = new ArrayList<>();
+      List<Throwable> failures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        Thread w = new Thread(() -> {
+          ThreadLocalRandom rnd = ThreadLocalRandom.current();
+          try {
+            go.await();
+            for (int i = 0; i < ops; i++) {
+              int c = 1 + rnd.nextInt(CLIENTS);
+              if (rnd.nextBoolean()) wh.addToWishlist(c, 1 + rnd.nextInt(PRODUCTS), 1 + rnd.nextInt(3));
+              else wh.recordPayment(c, 1 + rnd.nextInt(500));
+            }
+          } catch (Throwable e) {
+            synchronized (failures) { failures.add(e); }
+          }
+        });
+        workers.add(w);
+        w.start();
+      }
+      long start = System.nanoTime();
+      go.countDown();
+      for (Thread w : workers) w.join();
+      double seconds = (System.nanoTime() - start) / 1e9;
+      if (!failures.isEmpty()) throw new AssertionError("worker failed", failures.get(0));
+      String live = state(wh);
+      wh.closeJournal();
+
+      Warehouse replayed = Warehouse.recover(snapshot, journal, mode, groupMillis);
+      String back = state(replayed);
+      replayed.closeJournal();
+      check(live.equals(back), mode + ": replaying the journal gave a different warehouse");
+      return (double) threads * ops / seconds;
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+      }
+      Files.delete(dir);
+    }
+  }
+
+  // balances and wishlists, client by client
+  private static String state(Warehouse wh) {
+    StringBuilder out = new StringBuilder();
+    for (int c = 1; c <= CLIENTS; c++) {
+      out.append(wh.findClient(c).getBalanceCents());
+      for (WishlistItem item : wh.getWishlist(c)) out.append(' ').append(item.getProductNumber()).append('x').append(item.getQty());
+      out.append('\n');
+    }
+    return out.toString();
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,72 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Listing a large catalog the old way, println on an autoflushing PrintStream
+ * like System.out, against the buffered Console the menus now use:
+ *
+ *   time to list every product to a file for each, and to Console.nullSink (rendering only)
+ *   both files hold exactly the same text
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out ListingOutputBenchmark [products]
+ * Exits with an AssertionError if the listings differ.
+ */
+public class ListingOutputBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int products = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    for (int i = 0; i < products; i++) wh.addProduct("product " + i, 100 + i % 10_000, i % 50);
+
+    Path before = Files.createTempFile("listing", ".println");
+    Path after = Files.createTempFile("listing", ".console");
+    try {
+      for (int round = 1; round <= 3; round++) {
+        long start = System.nanoTime();
+        // what System.out does: a lock and a flush (one write call) per line
+        try (PrintStream out = new PrintStream(new FileOutputStream(before.toFile()), true)) {
+          for (Iterator<Product> it = wh.getProducts(); it.hasNext(); ) out.println(it.next());
+        }
+        double println = seconds(start);
+
+        start = System.nanoTime();
+        try (Console out = Console.toFile(after)) {
+          list(wh, out);
+        }
+        double console = seconds(start);
+
+        start = System.nanoTime();
+        try (Console out = Console.nullSink()) {
+          list(wh, out);
+        }
+        double rendering = seconds(start);
+
+        System.out.printf("round %d: %d products, println %.2f s, Console %.2f s (%.1fx), rendering alone %.2f s%n",
+            round, products, println, console, println / console, rendering);
+      }
+      check(Arrays.equals(Files.readAllBytes(before), Files.readAllBytes(after)), "the two listings differ");
+      System.out.println("ListingOutputBenchmark passed");
+    } finally {
+      Files.delete(before);
+      Files.delete(after);
+    }
+  }
+
+  // rendering into the buffer; it reaches the sink when the buffer fills and once at close
+  private static void list(Warehouse wh, PrintWriter out) {
+    for (Iterator<Product> it = wh.getProducts(); it.hasNext(); ) out.println(it.next());
+  }
+
+  private static double seconds(long startNanos) { return (System.nanoTime() - startNanos) / 1e9; }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,108 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Client and product lookup by int number against the old string keys, a
+ * HashMap<String, ...> keyed "C"+n / "P"+n over the same objects:
+ *
+ *   lookups per second for each, at random numbers
+ *   heap per entry of each index, from used memory after GC: the lists' number arrays
+ *   against the string-keyed maps with their id strings
+ *   both find the same client or product for every number, and nothing outside 1..n
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out LookupBenchmark [clients] [products] [lookups]
+ * (1M of each wants about 2 GB of heap: java -Xmx2g ...). Exits with an AssertionError on a wrong lookup.
+ */
+public class LookupBenchmark {
+
+  // keeps the lookups from being optimized away
+  private static volatile long sink;
+
+  public static void main(String[] args) {
+    int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+    int products = (args.length > 1) ? Integer.parseInt(args[1]) : 1_000_000;
+    int lookups = (args.length > 2) ? Integer.parseInt(args[2]) : 10_000_000;
+
+    long empty = usedAfterGc();
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    for (int i = 0; i < clients; i++) wh.addClient("c" + i, "addr");
+    for (int i = 0; i < products; i++) wh.addProduct("p" + i, 100 + i % 1000, 10);
+    long warehouse = usedAfterGc() - empty;
+
+    // the same objects behind a plain array, as the lists index them
+    long before = usedAfterGc();
+    Object[] byNumber = new Object[clients + products + 2];
+    for (int n = 1; n <= clients; n++) byNumber[n] = wh.findClient(n);
+    for (int n = 1; n <= products; n++) byNumber[clients + 1 + n] = wh.findProduct(n);
+    long arrayBytes = usedAfterGc() - before;
+
+    before = usedAfterGc();
+    Map<String, Client> clientIds = new HashMap<>();
+    Map<String, Product> productIds = new HashMap<>();
+    for (int n = 1; n <= clients; n++) clientIds.put(Ids.client(n), wh.findClient(n));
+    for (int n = 1; n <= products; n++) productIds.put(Ids.product(n), wh.findProduct(n));
+    long mapBytes = usedAfterGc() - before;
+
+    for (int n = 1; n <= clients; n++) {
+      Client c = wh.findClient(n);
+      check(c != null && c.getNumber() == n && clientIds.get(Ids.client(n)) == c, "client " + n + " looked up wrong");
+    }
+    for (int n = 1; n <= products; n++) {
+      Product p = wh.findProduct(n);
+      check(p != null && p.getNumber() == n && productIds.get(Ids.product(n)) == p, "product " + n + " looked up wrong");
+    }
+    for (int n : new int[] {0, -1, Integer.MIN_VALUE}) {
+      check(wh.findClient(n) == null && wh.findProduct(n) == null, "number " + n + " found something");
+    }
+    check(wh.findClient(clients + 1) == null && wh.findProduct(products + 1) == null, "a number past the last one found something");
+
+    // the same random sequence both ways; the string keys exist up front, as stored ids did
+    Random rnd = new Random(1);
+    int[] numbers = new int[1 << 20];
+    String[] keys = new String[numbers.length];
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = 1 + rnd.nextInt(Math.min(clients, products));
+      keys[i] = Ids.client(numbers[i]);
+    }
+    String[] productKeys = new String[numbers.length];
+    for (int i = 0; i < numbers.length; i++) productKeys[i] = Ids.product(numbers[i]);
+
+    for (int round = 1; round <= 3; round++) {
+      long start = System.nanoTime();
+      long sum = 0;
+      for (int i = 0; i < lookups; i++) {
+        int k = i & (numbers.length - 1);
+        sum += wh.findClient(numbers[k]).getNumber() + wh.findProduct(numbers[k]).getNumber();
+      }
+      double byInt = seconds(start);
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++) {
+        int k = i & (numbers.length - 1);
+        sum += clientIds.get(keys[k]).getNumber() + productIds.get(productKeys[k]).getNumber();
+      }
+      double byString = seconds(start);
+      sink = sum;
+      System.out.printf("round %d: int numbers %.1f M lookups/s, string keys %.1f M lookups/s (%.1fx)%n",
+          round, 2 * lookups / byInt / 1e6, 2 * lookups / byString / 1e6, byString / byInt);
+    }
+    int entries = clients + products;
+    System.out.printf("%d clients and %d products: warehouse %.0f MB; index per entry: array %.1f bytes, string-keyed maps %.1f bytes%n",
+        clients, products, warehouse / 1e6, (double) arrayBytes / entries, (double) mapBytes / entries);
+    check(byNumber.length > entries, "index array lost entries");
+    System.out.println("LookupBenchmark passed");
+  }
+
+  private static long usedAfterGc() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) System.gc();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  private static double seconds(long startNanos) { return (System.nanoTime() - startNanos) / 1e9; }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
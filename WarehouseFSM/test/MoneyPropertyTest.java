@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Property checks for money as long cents, over random seeds:
+ *
+ *   format then parse gives back the same cents, for any amount
+ *   parse rejects more than 2 decimals ("12.500") and anything but a plain decimal ("1e3")
+ *   arithmetic throws on overflow instead of wrapping
+ *   plus, minus and times allocate nothing once compiled (a million of each stay under 1 KB)
+ *   random order and payment streams leave exactly zero once every client pays off the balance
+ *   balances, including credits from overpaying, survive a snapshot and the journal unchanged
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out MoneyPropertyTest [seeds] [operations per seed]
+ * Exits with an AssertionError on the first failing seed.
+ */
+public class MoneyPropertyTest {
+  private static final int ARITHMETIC_OPS = 1_000_000;
+  private static final long ALLOCATION_SLACK_BYTES = 1024;
+
+  public static void main(String[] args) throws Exception {
+    int seeds = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+    int ops = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+    checkOverflow();
+    checkAllocationFree();
+    for (int seed = 1; seed <= seeds; seed++) {
+      Random rnd = new Random(seed);
+      checkFormatParse(rnd, seed);
+      checkPaidOff(rnd, seed, ops);
+      checkPersisted(rnd, seed);
+    }
+    System.out.println("MoneyPropertyTest passed for " + seeds + " seeds");
+  }
+
+  private static void checkFormatParse(Random rnd, int seed) {
+    for (int i = 0; i < 10000; i++) {
+      long cents = (i % 2 == 0) ? rnd.nextLong() / 100 : rnd.nextInt(20001) - 10000;
+      String text = Money.format(cents);
+      check(Money.parse(text) == cents, "seed " + seed + ": " + cents + " formats as " + text + " but parses as " + Money.parse(text));
+    }
+    check(Money.parse("12.5") == 1250, "12.5 should be 1250 cents");
+    check(Money.parse("-0.05") == -5, "-0.05 should be -5 cents");
+    // more than 2 decimals, even trailing zeros, and anything but a plain decimal
+    for (String bad : new String[] {"1.005", "12.500", "1e3", "1E2", "0x10", "+-1", "1.", ".5", "12.3.4", "NaN", ""}) {
+      try {
+        Money.parse(bad);
+        throw new AssertionError("\"" + bad + "\" should be rejected");
+      } catch (IllegalArgumentException expected) { }
+    }
+  }
+
+  private static void checkOverflow() {
+    expectArithmetic(() -> Money.plus(Long.MAX_VALUE, 1), "plus");
+    expectArithmetic(() -> Money.minus(Long.MIN_VALUE, 1), "minus");
+    expectArithmetic(() -> Money.times(Long.MAX_VALUE / 2, 3), "times");
+  }
+
+  // the thread's allocation counter across a million ops of each, after a warm-up run
+  private static void checkAllocationFree() {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long sum = 0;
+    for (int round = 0; round < 5; round++) sum += arithmetic(round);
+    long before = threads.getThreadAllocatedBytes(thread);
+    sum += arithmetic(7);
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+    check(allocated < ALLOCATION_SLACK_BYTES, ARITHMETIC_OPS + " money ops allocated " + allocated + " bytes (sum " + sum + ")");
+  }
+
+  // a running balance: each step bills a line, then takes a payment
+  private static long arithmetic(int seed) {
+    long balance = 0;
+    for (int i = 0; i < ARITHMETIC_OPS; i++) {
+      balance = Money.plus(balance, Money.times(199 + (i & 1023), 1 + ((i + seed) & 7)));
+      balance = Money.minus(balance, 150 + (i & 511));
+    }
+    return balance;
+  }
+
+  // orders at random prices and partial payments, then every client pays what is left
+  private static void checkPaidOff(Random rnd, int seed, int ops) {
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    List<Product> products = new ArrayList<>();
+    for (int i = 0; i < 50; i++) products.add(wh.addProduct("p" + i, 1 + rnd.nextInt(99999), Integer.MAX_VALUE / 2));
+    List<Client> clients = new ArrayList<>();
+    for (int i = 0; i < 200; i++) clients.add(wh.addClient("c" + i, "addr"));
+
+    for (int i = 0; i < ops; i++) {
+      Client c = clients.get(rnd.nextInt(clients.size()));
+      if (rnd.nextInt(3) > 0) {
+        int lines = 1 + rnd.nextInt(4);
+        for (int j = 0; j < lines; j++) {
+          wh.addToWishlist(c.getNumber(), products.get(rnd.nextInt(products.size())).getNumber(), 1 + rnd.nextInt(9));
+        }
+        wh.placeOrderFromWishlist(c.getNumber());
+      } else if (c.getBalanceCents() > 0) {
+        // odd amounts such as 1/3 of the balance, the kind that drifted as doubles
+        wh.recordPayment(c.getNumber(), Math.max(1, c.getBalanceCents() / (2 + rnd.nextInt(5))));
+      }
+    }
+    for (Client c : clients) {
+      long owed = c.getBalanceCents();
+      while (owed > 0) {
+        long part = Math.max(1, owed / 3);
+        wh.recordPayment(c.getNumber(), part);
+        owed -= part;
+      }
+      check(c.getBalanceCents() == 0, "seed " + seed + ": " + c.getId() + " left with " + c.getBalanceCents() + " cents after full payment");
+    }
+    check(wh.getClientsWithBalanceAbove(0).isEmpty(), "seed " + seed + ": clients still listed as owing after full payment");
+  }
+
+  // balances with credits and odd cents, through a snapshot and through journal replay
+  private static void checkPersisted(Random rnd, int seed) throws IOException {
+    Path dir = Files.createTempDirectory("money");
+    Path snapshot = dir.resolve("warehouse.bin");
+    Path journal = dir.resolve("warehouse.log");
+    try {
+      Warehouse wh = Warehouse.recover(snapshot, journal, OperationLog.Durability.ASYNC, 1);
+      List<Client> clients = new ArrayList<>();
+      for (int i = 0; i < 20; i++) clients.add(wh.addClient("c" + i, "addr"));
+      Product p = wh.addProduct("p", 1 + rnd.nextInt(99999), 1_000_000);
+      for (Client c : clients) {
+        wh.addToWishlist(c.getNumber(), p.getNumber(), 1 + rnd.nextInt(20));
+        wh.placeOrderFromWishlist(c.getNumber());
+        // overpaying some clients leaves them in credit (a negative balance)
+        wh.recordPayment(c.getNumber(), 1 + rnd.nextInt((int) Math.min(Integer.MAX_VALUE, 2 * c.getBalanceCents())));
+      }
+      long[] expected = balances(wh, clients);
+      wh.save(snapshot);
+
+      // more activity after the snapshot lives only in the journal
+      for (Client c : clients) wh.recordPayment(c.getNumber(), 1 + rnd.nextInt(1000));
+      long[] later = balances(wh, clients);
+      wh.closeJournal();
+
+      long[] loaded = balances(Warehouse.load(snapshot), clients);
+      for (int i = 0; i < clients.size(); i++) {
+        check(loaded[i] == expected[i], "seed " + seed + ": snapshot gave " + loaded[i] + " cents, expected " + expected[i]);
+      }
+      Warehouse recovered = Warehouse.recover(snapshot, journal, OperationLog.Durability.ASYNC, 1);
+      long[] replayed = balances(recovered, clients);
+      recovered.closeJournal();
+      for (int i = 0; i < clients.size(); i++) {
+        check(replayed[i] == later[i], "seed " + seed + ": journal gave " + replayed[i] + " cents, expected " + later[i]);
+      }
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+      }
+      Files.delete(dir);
+    }
+  }
+
+  private static long[] balances(Warehouse wh, List<Client> clients) {
+    long[] out = new long[clients.size()];
+    for (int i = 0; i < out.length; i++) out[i] = wh.findClient(clients.get(i).getNumber()).getBalanceCents();
+    return out;
+  }
+
+  private static void expectArithmetic(Runnable op, String name) {
+    try {
+      op.run();
+    } catch (ArithmeticException expected) {
+      return;
+    }
+    throw new AssertionError(name + " wrapped instead of throwing on overflow");
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
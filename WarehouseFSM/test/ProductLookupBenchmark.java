@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Product lookup, indexed against the old list scan, over a large catalog:
+ *
+ *   ProductList.findByNumber (dense array) against walking a LinkedList comparing ids
+ *   getProducts() lists products in the order they were inserted
+ *   both lookups find the same product for every number asked
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out ProductLookupBenchmark [products] [indexed lookups] [scanned lookups]
+ * Prints lookups per second for each; exits with an AssertionError if they disagree.
+ */
+public class ProductLookupBenchmark {
+
+  public static void main(String[] args) {
+    int products = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+    int indexed = (args.length > 1) ? Integer.parseInt(args[1]) : 5_000_000;
+    int scanned = (args.length > 2) ? Integer.parseInt(args[2]) : 2_000;
+
+    ProductList list = new ProductList();
+    LinkedList<Product> scan = new LinkedList<>();
+    for (int n = 1; n <= products; n++) {
+      Product p = new Product(n, "p" + n, 100 + n % 900, 10);
+      check(list.insertProduct(p), "product " + p.getId() + " refused");
+      scan.add(p);
+    }
+    checkOrder(list, scan);
+
+    Random rnd = new Random(1);
+    int[] asked = new int[indexed];
+    for (int i = 0; i < indexed; i++) asked[i] = 1 + rnd.nextInt(products);
+
+    // same answers first, on the numbers the scan will time
+    for (int i = 0; i < scanned; i++) {
+      check(list.findByNumber(asked[i]) == scanFor(scan, Ids.product(asked[i])), "lookups disagree on " + Ids.product(asked[i]));
+    }
+
+    for (int round = 1; round <= 3; round++) {
+      long start = System.nanoTime();
+      long sum = 0;
+      for (int i = 0; i < indexed; i++) sum += list.findByNumber(asked[i]).getNumber();
+      double indexedRate = indexed / seconds(start);
+
+      start = System.nanoTime();
+      for (int i = 0; i < scanned; i++) sum += scanFor(scan, Ids.product(asked[i])).getNumber();
+      double scannedRate = scanned / seconds(start);
+
+      System.out.printf("round %d: %d products, indexed %.0f lookups/s, list scan %.0f lookups/s (%.0fx) [%d]%n",
+          round, products, indexedRate, scannedRate, indexedRate / scannedRate, sum);
+    }
+  }
+
+  // the old ProductList.search: walk the list comparing ids
+  private static Product scanFor(List<Product> products, String id) {
+    for (Product p : products) {
+      if (p.getId().equals(id)) return p;
+    }
+    return null;
+  }
+
+  private static void checkOrder(ProductList list, List<Product> inserted) {
+    List<Product> listed = new ArrayList<>();
+    for (Iterator<Product> it = list.getProducts(); it.hasNext(); ) listed.add(it.next());
+    check(listed.equals(inserted), "getProducts() does not list products in insertion order");
+  }
+
+  private static double seconds(long startNanos) { return (System.nanoTime() - startNanos) / 1e9; }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Every report computed serially and on pools of 1, 2, 4 ... cores:
+ *
+ *   outstanding balances, top debtors, stock valuation, waitlisted demand and
+ *   revenue per product come out identical to the serial reference on every pool
+ *   time per full set of reports for each pool size, against the serial run
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out ReportsBenchmark [clients] [products] [orders]
+ * Exits with an AssertionError on the first report that differs.
+ */
+public class ReportsBenchmark {
+  private static final String[] REPORTS = {"outstanding balances", "top debtors", "stock valuation", "waitlisted demand", "revenue by product"};
+
+  public static void main(String[] args) {
+    int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+    int products = (args.length > 1) ? Integer.parseInt(args[1]) : 50_000;
+    int orders = (args.length > 2) ? Integer.parseInt(args[2]) : 400_000;
+
+    Random rnd = new Random(1);
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    for (int i = 0; i < products; i++) wh.addProduct("p" + i, 1 + rnd.nextInt(20_000), rnd.nextInt(40));
+    for (int i = 0; i < clients; i++) wh.addClient("c" + i, "addr");
+    for (int i = 0; i < orders; i++) {
+      int c = 1 + rnd.nextInt(clients);
+      for (int k = 1 + rnd.nextInt(3); k > 0; k--) wh.addToWishlist(c, 1 + rnd.nextInt(products), 1 + rnd.nextInt(4));
+      wh.placeOrderFromWishlist(c);
+      // some pay off, some overpay into credit, the rest owe
+      if (rnd.nextInt(4) == 0) wh.recordPayment(c, 1 + rnd.nextInt(50_000));
+    }
+
+    Reports serial = Reports.serial(wh);
+    List<Object> reference = runAll(serial);
+    long serialNanos = time(serial);
+    System.out.printf("serial: %.1f ms per set of reports%n", serialNanos / 1e6);
+    for (int cores = 1; cores <= Runtime.getRuntime().availableProcessors(); cores *= 2) {
+      ForkJoinPool pool = new ForkJoinPool(cores);
+      try {
+        Reports parallel = Reports.parallel(wh, pool);
+        List<Object> got = runAll(parallel);
+        for (int i = 0; i < REPORTS.length; i++) {
+          check(got.get(i).equals(reference.get(i)), cores + " cores: " + REPORTS[i] + " differs from the serial reference");
+        }
+        long nanos = time(parallel);
+        System.out.printf("%2d cores: %.1f ms per set of reports (%.2fx serial)%n", cores, nanos / 1e6, (double) serialNanos / nanos);
+      } finally {
+        pool.shutdown();
+      }
+    }
+    System.out.println("ReportsBenchmark passed");
+  }
+
+  // every report, in REPORTS order, as values that compare with equals
+  private static List<Object> runAll(Reports reports) {
+    List<Object> out = new ArrayList<>();
+    out.add(reports.outstandingBalances().toString());
+    StringBuilder top = new StringBuilder();
+    for (Client c : reports.topDebtors(100)) top.append(c.getId()).append('=').append(c.getBalanceCents()).append(' ');
+    out.add(top.toString());
+    out.add(reports.stockValuationCents());
+    out.add(reports.waitlistedDemand());
+    out.add(reports.revenueByProduct());
+    return out;
+  }
+
+  // best of a few rounds, after a warm-up
+  private static long time(Reports reports) {
+    runAll(reports);
+    long best = Long.MAX_VALUE;
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      runAll(reports);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
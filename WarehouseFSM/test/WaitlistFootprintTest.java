@@ -0,0 +1,101 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+/**
+ * Memory footprint of the waitlist under a receive-heavy workload over a large
+ * catalog:
+ *
+ *   shipments, waitlist views and counts for products nobody waits for store no queue
+ *   the queues held always match the products somebody waits for
+ *   once every waiter is filled, no queue or client entry is left and the
+ *   serialized waitlist is back to its size before the workload (plus one empty
+ *   slot per product number ever waitlisted)
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out WaitlistFootprintTest [products] [operations]
+ * Exits with an AssertionError when an empty queue is kept.
+ */
+public class WaitlistFootprintTest {
+
+  public static void main(String[] args) throws IOException {
+    int products = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+    int ops = (args.length > 1) ? Integer.parseInt(args[1]) : 1_000_000;
+    int clients = 1000;
+
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    for (int i = 0; i < products; i++) wh.addProduct("p" + i, 100, 0);
+    for (int i = 0; i < clients; i++) wh.addClient("c" + i, "addr");
+    Waitlist waitlist = wh.waitlist();
+    int emptySize = serializedSize(waitlist);
+
+    // reads and shipments only: nothing may be stored
+    Random rnd = new Random(1);
+    for (int i = 0; i < ops; i++) {
+      int p = 1 + rnd.nextInt(products);
+      switch (i % 3) {
+        case 0: wh.receiveShipment(p, 1); break;
+        case 1: check(wh.getProductWaitlist(p).isEmpty(), "waitlist appeared for P" + p); break;
+        default: check(waitlist.countForProduct(p) == 0, "count appeared for P" + p); break;
+      }
+    }
+    check(waitlist.productCount() == 0, waitlist.productCount() + " queues kept after reads and shipments");
+    check(serializedSize(waitlist) == emptySize, "serialized waitlist grew from " + emptySize + " to "
+        + serializedSize(waitlist) + " bytes without a single waiter");
+
+    // receive-heavy with a trickle of short orders; queues come and go
+    int highest = 0;
+    int peak = 0;
+    for (int i = 0; i < ops; i++) {
+      int p = 1 + rnd.nextInt(products / 10);
+      if (i % 10 == 0) {
+        int c = 1 + rnd.nextInt(clients);
+        wh.addToWishlist(c, p, 1 + rnd.nextInt(3) + wh.findProduct(p).getStockQuantity());
+        wh.placeOrderFromWishlist(c);
+        highest = Math.max(highest, p);
+      } else {
+        wh.receiveShipment(p, 1);
+      }
+      peak = Math.max(peak, waitlist.productCount());
+      if (i % 100_000 == 0) checkQueues(wh, products);
+    }
+    checkQueues(wh, products);
+
+    // filling every waiter
+    for (int p = 1; p <= products; p++) {
+      while (waitlist.countForProduct(p) > 0) wh.receiveShipment(p, 10);
+    }
+    check(waitlist.productCount() == 0, waitlist.productCount() + " queues kept after every waiter was filled");
+    for (int c = 1; c <= clients; c++) check(wh.getClientWaitlist(c).isEmpty(), "client entries kept for C" + c);
+    int drainedSize = serializedSize(waitlist);
+    // an empty slot serializes as one null byte per product number the arrays were grown to
+    check(drainedSize <= emptySize + 2 * (highest + clients + 32), "serialized waitlist drained to " + drainedSize
+        + " bytes, started at " + emptySize);
+    System.out.println("footprint: " + products + " products, peak " + peak + " queues, serialized "
+        + emptySize + " bytes empty, " + drainedSize + " drained");
+    System.out.println("WaitlistFootprintTest passed");
+  }
+
+  // the number of stored queues is exactly the number of products with a waiter
+  private static void checkQueues(Warehouse wh, int products) {
+    int waiting = 0;
+    for (int p = 1; p <= products; p++) {
+      if (wh.waitlist().countForProduct(p) > 0) waiting++;
+    }
+    check(wh.waitlist().productCount() == waiting,
+        wh.waitlist().productCount() + " queues stored for " + waiting + " products with waiters");
+  }
+
+  private static int serializedSize(Waitlist waitlist) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(waitlist);
+    }
+    return bytes.size();
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stress check for the striped Warehouse: many threads place single and bulk
+ * orders, receive single and multi-product shipments and record payments on a
+ * small set of hot products and clients, then the books must balance:
+ *
+ *   initial stock + received = stock left + units invoiced   (no oversell, no lost stock update)
+ *   units wished = units invoiced + units waitlisted + units still on wishlists   (no lost waitlist entry)
+ *   balance = invoiced - paid, per client   (no lost balance update)
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out WarehouseStressTest [threads] [ops per thread] [rounds]
+ * Exits with an AssertionError on the first broken invariant.
+ */
+public class WarehouseStressTest {
+  private static final int PRODUCTS = 8;
+  private static final int CLIENTS = 32;
+  private static final int INITIAL_STOCK = 40;
+
+  public static void main(String[] args) throws Exception {
+    int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+    int ops = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+    int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+    for (int round = 1; round <= rounds; round++) {
+      long start = System.nanoTime();
+      run(threads, ops);
+      System.out.println("round " + round + ": " + threads + " threads x " + ops + " ops ok in "
+          + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+    System.out.println("WarehouseStressTest passed");
+  }
+
+  private static void run(int threads, int ops) throws InterruptedException {
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    int[] products = new int[PRODUCTS];
+    for (int i = 0; i < PRODUCTS; i++) products[i] = wh.addProduct("p" + i, 100 + 37 * i, INITIAL_STOCK).getNumber();
+    int[] clients = new int[CLIENTS];
+    for (int i = 0; i < CLIENTS; i++) clients[i] = wh.addClient("c" + i, "addr").getNumber();
+
+    // what the threads did, indexed like products/clients
+    AtomicLongArray received = new AtomicLongArray(PRODUCTS);
+    AtomicLongArray wished = new AtomicLongArray(PRODUCTS);
+    AtomicLongArray paid = new AtomicLongArray(CLIENTS);
+
+    CountDownLatch go = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread w = new Thread(() -> {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        try {
+          go.await();
+          for (int i = 0; i < ops; i++) {
+            int op = rnd.nextInt(100);
+            if (op < 50) {
+              // one client's order over a few products
+              int c = rnd.nextInt(CLIENTS);
+              int lines = 1 + rnd.nextInt(3);
+              for (int j = 0; j < lines; j++) {
+                int p = rnd.nextInt(PRODUCTS);
+                int qty = 1 + rnd.nextInt(4);
+                wh.addToWishlist(clients[c], products[p], qty);
+                wished.addAndGet(p, qty);
+              }
+              wh.placeOrderFromWishlist(clients[c]);
+            } else if (op < 60) {
+              // nightly-style bulk order over a few clients
+              List<Integer> batch = new ArrayList<>();
+              for (int j = 0; j < 3; j++) {
+                int c = rnd.nextInt(CLIENTS);
+                int p = rnd.nextInt(PRODUCTS);
+                int qty = 1 + rnd.nextInt(4);
+                wh.addToWishlist(clients[c], products[p], qty);
+                wished.addAndGet(p, qty);
+                batch.add(clients[c]);
+              }
+              wh.placeOrdersFromWishlists(batch);
+            } else if (op < 80) {
+              int p = rnd.nextInt(PRODUCTS);
+              int qty = 1 + rnd.nextInt(8);
+              wh.receiveShipment(products[p], qty);
+              received.addAndGet(p, qty);
+            } else if (op < 88) {
+              // a truck with two products, possibly the same one twice
+              Map<Integer, Integer> truck = new LinkedHashMap<>();
+              for (int j = 0; j < 2; j++) {
+                int p = rnd.nextInt(PRODUCTS);
+                int qty = 1 + rnd.nextInt(8);
+                truck.merge(products[p], qty, Integer::sum);
+                received.addAndGet(p, qty);
+              }
+              wh.receiveShipments(truck);
+            } else {
+              int c = rnd.nextInt(CLIENTS);
+              long cents = 1 + rnd.nextInt(5000);
+              wh.recordPayment(clients[c], cents);
+              paid.addAndGet(c, cents);
+            }
+          }
+        } catch (Throwable e) {
+          synchronized (failures) { failures.add(e); }
+        }
+      });
+      workers.add(w);
+      w.start();
+    }
+    go.countDown();
+    for (Thread w : workers) w.join();
+    if (!failures.isEmpty()) throw new AssertionError("worker failed", failures.get(0));
+
+    // summing what was billed, per product and per client
+    long[] invoiced = new long[PRODUCTS];
+    for (int c = 0; c < CLIENTS; c++) {
+      Client client = wh.findClient(clients[c]);
+      long billed = 0;
+      for (Invoice inv : client.getInvoices()) {
+        long lines = 0;
+        for (Invoice.Line line : inv.getLines()) {
+          invoiced[indexOf(products, line.productNumber)] += line.qty;
+          lines = Money.plus(lines, line.lineTotalCents());
+        }
+        check(lines == inv.getTotalCents(), inv.getId() + " total " + inv.getTotalCents() + " != lines " + lines);
+        billed = Money.plus(billed, inv.getTotalCents());
+      }
+      long expected = Money.minus(billed, paid.get(c));
+      check(client.getBalanceCents() == expected,
+          client.getId() + " balance " + client.getBalanceCents() + " != invoiced - paid " + expected);
+    }
+
+    // counting units still waiting, on waitlists and on wishlists nobody ordered yet
+    long[] waiting = new long[PRODUCTS];
+    long[] onWishlists = new long[PRODUCTS];
+    for (int p = 0; p < PRODUCTS; p++) {
+      for (WaitlistItem wi : wh.getProductWaitlist(products[p])) {
+        check(wi.getProductNumber() == products[p], "waitlist item " + wi + " filed under " + Ids.product(products[p]));
+        waiting[p] += wi.getQty();
+      }
+    }
+    for (int c = 0; c < CLIENTS; c++) {
+      for (WishlistItem item : wh.getWishlist(clients[c])) {
+        onWishlists[indexOf(products, item.getProductNumber())] += item.getQty();
+      }
+    }
+
+    for (int p = 0; p < PRODUCTS; p++) {
+      Product product = wh.findProduct(products[p]);
+      int stock = product.getStockQuantity();
+      check(stock >= 0, product.getId() + " oversold: stock " + stock);
+      check(INITIAL_STOCK + received.get(p) == stock + invoiced[p],
+          product.getId() + ": initial " + INITIAL_STOCK + " + received " + received.get(p)
+              + " != stock " + stock + " + invoiced " + invoiced[p]);
+      check(wished.get(p) == invoiced[p] + waiting[p] + onWishlists[p],
+          product.getId() + ": wished " + wished.get(p) + " != invoiced " + invoiced[p]
+              + " + waitlisted " + waiting[p] + " + on wishlists " + onWishlists[p]);
+    }
+  }
+
+  private static int indexOf(int[] numbers, int number) {
+    for (int i = 0; i < numbers.length; i++) {
+      if (numbers[i] == number) return i;
+    }
+    throw new AssertionError("unknown number " + number + " not in " + Arrays.toString(numbers));
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,175 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Wishlist's primitive product-number map against the old storage, a
+ * LinkedHashMap<String,Integer> keyed "P"+n and merged with Integer::sum:
+ *
+ *   heap bytes per client wishlist for each, from used memory after GC
+ *   bytes allocated walking a wishlist: the old getItems() copy into a LinkedList against forEach
+ *   bytes allocated per placeOrderFromWishlist
+ *   random adds, subtracts and removes keep the same lines in the same insertion order as the map
+ *
+ * Run from WarehouseFSM:
+ *   javac -d out *.java test/*.java && java -cp out WishlistFootprintBenchmark [clients] [max lines per wishlist]
+ * Exits with an AssertionError if a wishlist's lines or order differ from the map's.
+ */
+public class WishlistFootprintBenchmark {
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static final int PRODUCTS = 10_000;
+
+  // keeps the walks from being optimized away
+  private static volatile long sink;
+
+  public static void main(String[] args) {
+    int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+    int maxLines = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+
+    checkOrder(new Random(1));
+    footprint(clients, maxLines);
+    walks(clients, maxLines);
+    orders(Math.min(clients, 50_000), maxLines);
+    System.out.println("WishlistFootprintBenchmark passed");
+  }
+
+  // the same random operations on a Wishlist and on the old map, compared line by line
+  private static void checkOrder(Random rnd) {
+    for (int round = 0; round < 2000; round++) {
+      Wishlist w = new Wishlist();
+      Map<String, Integer> old = new LinkedHashMap<>();
+      for (int op = 0; op < 50; op++) {
+        int product = 1 + rnd.nextInt(20);
+        int qty = 1 + rnd.nextInt(5);
+        String key = Ids.product(product);
+        switch (rnd.nextInt(6)) {
+          case 0:
+            w.remove(product);
+            old.remove(key);
+            break;
+          case 1:
+            w.subtract(product, qty);
+            if (old.containsKey(key)) {
+              if (old.get(key) > qty) old.put(key, old.get(key) - qty);
+              else old.remove(key);
+            }
+            break;
+          default:
+            w.add(product, qty);
+            old.merge(key, qty, Integer::sum);
+        }
+        check(w.size() == old.size(), "wishlist has " + w.size() + " lines, the map " + old.size());
+        int i = 0;
+        for (Map.Entry<String, Integer> e : old.entrySet()) {
+          check(Ids.product(w.productNumberAt(i)).equals(e.getKey()) && w.quantityAt(i) == e.getValue(),
+              "line " + i + " is " + w + ", the map has " + old);
+          i++;
+        }
+      }
+    }
+  }
+
+  // heap held by one wishlist per client, built both ways from the same lines
+  private static void footprint(int clients, int maxLines) {
+    long base = usedAfterGc();
+    Wishlist[] primitive = new Wishlist[clients];
+    Random rnd = new Random(2);
+    for (int c = 0; c < clients; c++) {
+      primitive[c] = new Wishlist();
+      for (int k = 1 + rnd.nextInt(maxLines); k > 0; k--) primitive[c].add(1 + rnd.nextInt(PRODUCTS), 1 + rnd.nextInt(5));
+    }
+    double primitiveBytes = (double) (usedAfterGc() - base) / clients;
+
+    base = usedAfterGc();
+    List<Map<String, Integer>> boxed = new ArrayList<>(clients);
+    rnd = new Random(2);
+    for (int c = 0; c < clients; c++) {
+      Map<String, Integer> m = new LinkedHashMap<>();
+      for (int k = 1 + rnd.nextInt(maxLines); k > 0; k--) m.merge(Ids.product(1 + rnd.nextInt(PRODUCTS)), 1 + rnd.nextInt(5), Integer::sum);
+      boxed.add(m);
+    }
+    double boxedBytes = (double) (usedAfterGc() - base) / clients;
+    check(boxed.size() == primitive.length, "built different numbers of wishlists");
+    System.out.printf("%d clients, 1..%d lines: Wishlist %.0f bytes each, LinkedHashMap<String,Integer> %.0f bytes each (%.1fx)%n",
+        clients, maxLines, primitiveBytes, boxedBytes, boxedBytes / primitiveBytes);
+  }
+
+  // allocation of walking every wishlist once: the old copy-per-call against the visitor
+  private static void walks(int clients, int maxLines) {
+    Wishlist[] lists = new Wishlist[clients];
+    Random rnd = new Random(3);
+    for (int c = 0; c < clients; c++) {
+      lists[c] = new Wishlist();
+      for (int k = 1 + rnd.nextInt(maxLines); k > 0; k--) lists[c].add(1 + rnd.nextInt(PRODUCTS), 1 + rnd.nextInt(5));
+    }
+    long[] total = new long[1];
+    Wishlist.ItemVisitor add = (number, qty) -> total[0] += qty;
+    long copied = 0;
+    long visited = 0;
+    for (int round = 0; round < 3; round++) {
+      long before = allocated();
+      for (Wishlist w : lists) {
+        for (WishlistItem item : copy(w)) total[0] += item.getQty();
+      }
+      copied = allocated() - before;
+      before = allocated();
+      for (Wishlist w : lists) w.forEach(add);
+      visited = allocated() - before;
+    }
+    sink = total[0];
+    System.out.printf("walking a wishlist: getItems() copy %.0f bytes, forEach %.1f bytes%n",
+        (double) copied / clients, (double) visited / clients);
+  }
+
+  // what getItems() used to do on every call
+  private static List<WishlistItem> copy(Wishlist w) {
+    List<WishlistItem> items = new LinkedList<>();
+    w.forEach((number, qty) -> items.add(new WishlistItem(number, qty)));
+    return items;
+  }
+
+  // allocation per order, every wishlist filled before the measured loop
+  private static void orders(int clients, int maxLines) {
+    Warehouse wh = new Warehouse(new ClientList(), new ProductList());
+    for (int i = 0; i < PRODUCTS; i++) wh.addProduct("p" + i, 100 + i, Integer.MAX_VALUE / 2);
+    for (int i = 0; i < clients; i++) wh.addClient("c" + i, "addr");
+    Random rnd = new Random(4);
+    long bytes = 0;
+    int lines = 0;
+    for (int round = 0; round < 3; round++) {
+      lines = 0;
+      for (int c = 1; c <= clients; c++) {
+        for (int k = 1 + rnd.nextInt(maxLines); k > 0; k--) {
+          wh.addToWishlist(c, 1 + rnd.nextInt(PRODUCTS), 1 + rnd.nextInt(5));
+          lines++;
+        }
+      }
+      long before = allocated();
+      for (int c = 1; c <= clients; c++) wh.placeOrderFromWishlist(c);
+      bytes = allocated() - before;
+    }
+    for (Iterator<Client> it = wh.getClients(); it.hasNext(); ) {
+      check(it.next().getWishlist().isEmpty(), "an order left lines on the wishlist");
+    }
+    System.out.printf("placeOrderFromWishlist: %.0f bytes per order, %.0f bytes per line%n",
+        (double) bytes / clients, (double) bytes / lines);
+  }
+
+  private static long allocated() { return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()); }
+
+  private static long usedAfterGc() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) System.gc();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  private static void check(boolean ok, String message) {
+    if (!ok) throw new AssertionError(message);
+  }
+}